@@ -0,0 +1,72 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The command line options of the load tools, given as --name value pairs.
+ *
+ * @author Claudiu Ciobotariu
+ */
+final class CommandLineOptions {
+	private final Map<String, String> mValues = new HashMap<>();
+
+	/**
+	 * Parse the command line arguments.
+	 *
+	 * @param args The arguments, each option name is followed by its value.
+	 * @throws IllegalArgumentException If an argument is not an option or has no value.
+	 */
+	CommandLineOptions(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (!args[i].startsWith("--") || i + 1 == args.length) {
+				throw new IllegalArgumentException("Invalid option: " + args[i]);
+			}
+			mValues.put(args[i].substring(2), args[i + 1]);
+		}
+	}
+
+	boolean has(String name) {
+		return mValues.containsKey(name);
+	}
+
+	String getString(String name, String defValue) {
+		String value = mValues.get(name);
+		return value != null ? value : defValue;
+	}
+
+	int getInt(String name, int defValue) {
+		String value = mValues.get(name);
+		if (value == null) {
+			return defValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number for --" + name + ": " + value);
+		}
+	}
+
+	boolean getBoolean(String name, boolean defValue) {
+		String value = mValues.get(name);
+		return value != null ? Boolean.parseBoolean(value) : defValue;
+	}
+}
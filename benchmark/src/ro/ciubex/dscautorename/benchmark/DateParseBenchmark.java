@@ -0,0 +1,82 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import ro.ciubex.dscautorename.util.DateTimeParser;
+
+/**
+ * Measure the parsing of the date strings read from the EXIF data of the images and from the
+ * metadata of the videos, used by Utilities.parseExifDateTimeString() and
+ * Utilities.parseMetadataDateTimeString().
+ *
+ * @author Claudiu Ciobotariu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DateParseBenchmark {
+	@Param({"10", "1000", "100000"})
+	public int fileCount;
+
+	private String[] mExifDateTimes;
+	private String[] mMetadataDateTimes;
+	private int mExifIndex;
+	private int mMetadataIndex;
+
+	@Setup
+	public void setup() {
+		long[] dates = FileNameDataSet.captureDates(fileCount);
+		mExifDateTimes = FileNameDataSet.exifDateTimes(dates);
+		mMetadataDateTimes = FileNameDataSet.metadataDateTimes(dates);
+	}
+
+	@Benchmark
+	public Date parseExifDateTimeString() {
+		if (mExifIndex == mExifDateTimes.length) {
+			mExifIndex = 0;
+		}
+		return DateTimeParser.parseExifDateTimeString(mExifDateTimes[mExifIndex++]);
+	}
+
+	@Benchmark
+	public Date parseMetadataDateTimeString() {
+		if (mMetadataIndex == mMetadataDateTimes.length) {
+			mMetadataIndex = 0;
+		}
+		return DateTimeParser.parseMetadataDateTimeString(mMetadataDateTimes[mMetadataIndex++]);
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generate realistic benchmark data: camera file names, capture dates with burst shots, and the
+ * EXIF and media metadata date strings. The data is generated with a fixed seed, so all runs use
+ * the same values.
+ *
+ * @author Claudiu Ciobotariu
+ */
+final class FileNameDataSet {
+	/**
+	 * Typical original file name patterns, defined by the users for the common camera apps.
+	 */
+	static final String[] PATTERNS = {"DSC_*.JPG", "IMG_*.JPG", "VID_*.MP4", "MOV_*.MP4",
+			"PXL_*.jpg", "Screenshot_*.png"};
+	static final long SEED = 20180101L;
+
+	private FileNameDataSet() {
+	}
+
+	/**
+	 * Generate file names, most of them matching the patterns: 40% DSC_, 30% IMG_, 15% VID_, 5%
+	 * PXL_, 5% already renamed files, 3% names of messaging apps and 2% not ASCII names.
+	 *
+	 * @param count Number of file names.
+	 * @return The file names.
+	 */
+	static String[] fileNames(int count) {
+		Random random = new Random(SEED);
+		SimpleDateFormat format = newFormat("yyyyMMdd_HHmmss");
+		long[] dates = captureDates(count);
+		String[] names = new String[count];
+		String stamp;
+		int dice;
+		for (int i = 0; i < count; i++) {
+			stamp = format.format(new Date(dates[i]));
+			dice = random.nextInt(100);
+			if (dice < 40) {
+				names[i] = String.format(Locale.US, "DSC_%04d.JPG", i % 10000);
+			} else if (dice < 70) {
+				names[i] = "IMG_" + stamp + ".jpg";
+			} else if (dice < 85) {
+				names[i] = "VID_" + stamp + ".mp4";
+			} else if (dice < 90) {
+				names[i] = "PXL_" + stamp + String.format(Locale.US, "%03d", random.nextInt(1000)) + ".jpg";
+			} else if (dice < 95) {
+				names[i] = "PIC_" + stamp + ".jpg";
+			} else if (dice < 98) {
+				names[i] = "IMG-" + stamp.substring(0, 8) + "-WA" + String.format(Locale.US, "%04d", i % 10000) + ".jpeg";
+			} else {
+				names[i] = String.format(Locale.US, "Fotografie_șă_%04d.JPG", i % 10000);
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Generate capture dates in ascending order, with a random interval up to two minutes. A
+	 * quarter of the files are burst shots, taken in the same second as the previous file.
+	 *
+	 * @param count Number of dates.
+	 * @return The dates in milliseconds.
+	 */
+	static long[] captureDates(int count) {
+		Random random = new Random(SEED + 1);
+		long[] dates = new long[count];
+		long time = getStartMillis();
+		for (int i = 0; i < count; i++) {
+			if (i > 0 && random.nextInt(4) != 0) {
+				time += 1000 + random.nextInt(120000);
+			}
+			dates[i] = time;
+		}
+		return dates;
+	}
+
+	/**
+	 * Obtain the first capture date, January 1 of the last year at 08:00 UTC. The dates should be
+	 * recent, older years are replaced by the metadata date parser.
+	 *
+	 * @return The first capture date in milliseconds.
+	 */
+	private static long getStartMillis() {
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.US);
+		calendar.set(calendar.get(Calendar.YEAR) - 1, Calendar.JANUARY, 1, 8, 0, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	/**
+	 * Format the dates as EXIF DateTime values, yyyy:MM:dd HH:mm:ss.
+	 *
+	 * @param dates The dates.
+	 * @return The EXIF date time strings.
+	 */
+	static String[] exifDateTimes(long[] dates) {
+		return formatDates(dates, "yyyy:MM:dd HH:mm:ss");
+	}
+
+	/**
+	 * Format the dates as media metadata values, yyyyMMddTHHmmss.SSSZ.
+	 *
+	 * @param dates The dates.
+	 * @return The metadata date time strings.
+	 */
+	static String[] metadataDateTimes(long[] dates) {
+		return formatDates(dates, "yyyyMMdd'T'HHmmss.SSS'Z'");
+	}
+
+	private static String[] formatDates(long[] dates, String pattern) {
+		SimpleDateFormat format = newFormat(pattern);
+		String[] values = new String[dates.length];
+		for (int i = 0; i < dates.length; i++) {
+			values[i] = format.format(new Date(dates[i]));
+		}
+		return values;
+	}
+
+	private static SimpleDateFormat newFormat(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format;
+	}
+}
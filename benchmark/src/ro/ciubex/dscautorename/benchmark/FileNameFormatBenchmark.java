@@ -0,0 +1,101 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+
+/**
+ * Measure the formatting of the new file names from the file dates. The simpleDateFormat
+ * benchmark does the same work as DSCApplication.getFileNameFormatted(), which creates a
+ * SimpleDateFormat for each call, the fileNameFormatter benchmark uses the compiled formatter
+ * used by the rename thread.
+ *
+ * @author Claudiu Ciobotariu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FileNameFormatBenchmark {
+	@Param({"10", "1000", "100000"})
+	public int fileCount;
+
+	/**
+	 * The default pattern, and a pattern with a month name which is not on the fast path.
+	 */
+	@Param({"'PIC_'yyyyMMdd_HHmmss", "dd MMM yyyy HH.mm.ss"})
+	public String pattern;
+
+	private long[] mDates;
+	private Locale mLocale;
+	private FileNameFormatter mFormatter;
+	private final StringBuilder mBuilder = new StringBuilder();
+	private int mIndex;
+
+	@Setup
+	public void setup() {
+		mLocale = Locale.US;
+		mDates = FileNameDataSet.captureDates(fileCount);
+		mFormatter = new FileNameFormatter(pattern, mLocale);
+	}
+
+	private long nextDate() {
+		if (mIndex == mDates.length) {
+			mIndex = 0;
+		}
+		return mDates[mIndex++];
+	}
+
+	@Benchmark
+	public String simpleDateFormat() {
+		return new SimpleDateFormat(pattern, mLocale).format(new Date(nextDate()));
+	}
+
+	@Benchmark
+	public String fileNameFormatter() {
+		return mFormatter.format(nextDate());
+	}
+
+	@Benchmark
+	public int fileNameFormatterBuffer() {
+		StringBuilder sb = mBuilder;
+		sb.setLength(0);
+		mFormatter.format(nextDate(), sb);
+		return sb.length();
+	}
+}
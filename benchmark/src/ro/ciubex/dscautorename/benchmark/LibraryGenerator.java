@@ -0,0 +1,412 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+import ro.ciubex.dscautorename.util.Utilities;
+
+/**
+ * Fill a folder with a synthetic camera library: DSC_nnnn.JPG images with a minimal EXIF
+ * segment and VID_nnnn.mp4 videos with a minimal movie header. The files are spread over camera
+ * and album folders of different sizes, some of them are burst shots taken in the same second
+ * and some have an already renamed file with the same date next to them, so the counter suffix
+ * and the name collision logic are used. A hidden thumbnails folder is added, which should be
+ * skipped by the scan.
+ * <p>
+ * The library is generated with a fixed seed, so the same options always produce the same files.
+ * <p>
+ * Usage: LibraryGenerator --root DIR [--files 100000] [--video-percent 15] [--burst-percent 25]
+ * [--renamed-percent 2] [--folder-size 1000] [--renamed-format 'PIC_'yyyyMMdd_HHmmss]
+ * [--seed 20180101]
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class LibraryGenerator {
+	/**
+	 * Seconds between 1904-01-01, the ISO base media file epoch, and 1970-01-01.
+	 */
+	private static final long MP4_EPOCH_OFFSET = 2082844800L;
+	private static final int MAX_CAMERA_COUNTER = 9999;
+	private static final int THUMBNAILS_RATIO = 100;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	/**
+	 * The positions of the date values in the JPEG and MP4 templates.
+	 */
+	private static final int JPEG_DATETIME = 50;
+	private static final int JPEG_DATETIME_ORIGINAL = 88;
+	private static final int MP4_CREATION_TIME = 40;
+	private static final int MP4_MODIFICATION_TIME = 44;
+
+	private final File mRoot;
+	private int mFileCount = 100000;
+	private int mVideoPercent = 15;
+	private int mBurstPercent = 25;
+	private int mRenamedPercent = 2;
+	private int mFolderSize = 1000;
+	private String mRenamedFormat = "'PIC_'yyyyMMdd_HHmmss";
+	private long mSeed = 20180101L;
+
+	private byte[] mJpeg;
+	private byte[] mMp4;
+	private SimpleDateFormat mExifFormat;
+	private FileNameFormatter mRenamedFormatter;
+	private int mFolderCount;
+	private int mImageCount;
+	private int mVideoCount;
+	private int mBurstCount;
+	private int mRenamedCount;
+	private int mThumbnailCount;
+	private long mByteCount;
+
+	/**
+	 * Create the generator.
+	 *
+	 * @param root The folder where the library is generated.
+	 */
+	public LibraryGenerator(File root) {
+		mRoot = root;
+	}
+
+	/**
+	 * Create a generator configured from the command line options.
+	 *
+	 * @param root    The folder where the library is generated.
+	 * @param options The command line options.
+	 * @return The generator.
+	 */
+	static LibraryGenerator fromOptions(File root, CommandLineOptions options) {
+		LibraryGenerator generator = new LibraryGenerator(root);
+		generator.setFileCount(options.getInt("files", generator.mFileCount));
+		generator.setVideoPercent(options.getInt("video-percent", generator.mVideoPercent));
+		generator.setBurstPercent(options.getInt("burst-percent", generator.mBurstPercent));
+		generator.setRenamedPercent(options.getInt("renamed-percent", generator.mRenamedPercent));
+		generator.setFolderSize(options.getInt("folder-size", generator.mFolderSize));
+		generator.setRenamedFormat(options.getString("renamed-format", generator.mRenamedFormat));
+		generator.setSeed(options.getInt("seed", (int) generator.mSeed));
+		return generator;
+	}
+
+	public void setFileCount(int fileCount) {
+		mFileCount = fileCount;
+	}
+
+	public void setVideoPercent(int videoPercent) {
+		mVideoPercent = videoPercent;
+	}
+
+	public void setBurstPercent(int burstPercent) {
+		mBurstPercent = burstPercent;
+	}
+
+	public void setRenamedPercent(int renamedPercent) {
+		mRenamedPercent = renamedPercent;
+	}
+
+	/**
+	 * Set the maximum number of camera files of a folder, the folder sizes are random, between a
+	 * quarter of this value and this value.
+	 *
+	 * @param folderSize The maximum folder size, up to 9999, the camera counter limit.
+	 */
+	public void setFolderSize(int folderSize) {
+		mFolderSize = Math.max(4, Math.min(MAX_CAMERA_COUNTER, folderSize));
+	}
+
+	/**
+	 * Set the file name format of the already renamed files.
+	 *
+	 * @param renamedFormat The format, using the application file name format syntax.
+	 */
+	public void setRenamedFormat(String renamedFormat) {
+		mRenamedFormat = renamedFormat;
+	}
+
+	public void setSeed(long seed) {
+		mSeed = seed;
+	}
+
+	/**
+	 * Generate the library.
+	 *
+	 * @throws IOException If a file could not be written.
+	 */
+	public void generate() throws IOException {
+		mJpeg = createJpegTemplate();
+		mMp4 = createMp4Template();
+		mExifFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+		mRenamedFormatter = new FileNameFormatter(mRenamedFormat, Locale.US);
+		Random random = new Random(mSeed);
+		long time = getStartMillis();
+		int remaining = mFileCount;
+		int size, counter;
+		boolean burst;
+		File folder;
+		while (remaining > 0) {
+			folder = nextFolder(random);
+			size = Math.min(remaining, mFolderSize / 4 + random.nextInt(mFolderSize - mFolderSize / 4 + 1));
+			for (counter = 1; counter <= size; counter++) {
+				burst = counter > 1 && random.nextInt(100) < mBurstPercent;
+				if (burst) {
+					mBurstCount++;
+				} else {
+					time += 1000 + random.nextInt(600) * 1000L;
+				}
+				if (random.nextInt(100) < mVideoPercent) {
+					writeVideo(new File(folder, String.format(Locale.US, "VID_%04d.mp4", counter)), time);
+					mVideoCount++;
+				} else {
+					writeImage(new File(folder, String.format(Locale.US, "DSC_%04d.JPG", counter)), time);
+					mImageCount++;
+					if (!burst && random.nextInt(100) < mRenamedPercent) {
+						writeImage(new File(folder, mRenamedFormatter.format(time) + ".JPG"), time);
+						mRenamedCount++;
+					}
+				}
+			}
+			remaining -= size;
+		}
+		writeThumbnails(random);
+	}
+
+	/**
+	 * Create the next folder, most of them are camera folders, the others are album folders,
+	 * some of them nested.
+	 *
+	 * @param random The random generator.
+	 * @return The created folder.
+	 * @throws IOException If the folder could not be created.
+	 */
+	private File nextFolder(Random random) throws IOException {
+		int index = mFolderCount++;
+		int dice = random.nextInt(10);
+		String path;
+		if (index == 0) {
+			path = "DCIM/Camera";
+		} else if (dice < 5) {
+			path = String.format(Locale.US, "DCIM/%03dMEDIA", 100 + index % 900);
+		} else if (dice < 8) {
+			path = String.format(Locale.US, "Pictures/Album_%04d", index);
+		} else {
+			path = String.format(Locale.US, "Pictures/Album_%04d/Part_%02d", index / 10, index % 10);
+		}
+		File folder = new File(mRoot, path);
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create the folder: " + folder);
+		}
+		return folder;
+	}
+
+	/**
+	 * Write a few camera files in a hidden folder, these should not be found by the scan.
+	 *
+	 * @param random The random generator.
+	 * @throws IOException If a file could not be written.
+	 */
+	private void writeThumbnails(Random random) throws IOException {
+		File folder = new File(mRoot, "DCIM/.thumbnails");
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create the folder: " + folder);
+		}
+		long time = getStartMillis();
+		int count = Math.max(1, mFileCount / THUMBNAILS_RATIO);
+		for (int i = 1; i <= count; i++) {
+			time += 1000 + random.nextInt(600) * 1000L;
+			writeImage(new File(folder, String.format(Locale.US, "DSC_%04d.JPG", i)), time);
+			mThumbnailCount++;
+		}
+	}
+
+	/**
+	 * Write a JPEG file, the EXIF date is the local date and time, like the cameras are saving it.
+	 *
+	 * @param file The file.
+	 * @param time The capture time.
+	 * @throws IOException If the file could not be written.
+	 */
+	private void writeImage(File file, long time) throws IOException {
+		byte[] date = mExifFormat.format(new Date(time)).getBytes(ASCII);
+		System.arraycopy(date, 0, mJpeg, JPEG_DATETIME, date.length);
+		System.arraycopy(date, 0, mJpeg, JPEG_DATETIME_ORIGINAL, date.length);
+		writeFile(file, mJpeg, time);
+	}
+
+	/**
+	 * Write an MP4 file, the movie header times are in UTC.
+	 *
+	 * @param file The file.
+	 * @param time The capture time.
+	 * @throws IOException If the file could not be written.
+	 */
+	private void writeVideo(File file, long time) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(mMp4);
+		int seconds = (int) (time / 1000 + MP4_EPOCH_OFFSET);
+		buffer.putInt(MP4_CREATION_TIME, seconds);
+		buffer.putInt(MP4_MODIFICATION_TIME, seconds);
+		writeFile(file, mMp4, time);
+	}
+
+	private void writeFile(File file, byte[] content, long time) throws IOException {
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(file);
+			out.write(content);
+		} finally {
+			Utilities.doClose(out);
+		}
+		file.setLastModified(time);
+		mByteCount += content.length;
+	}
+
+	/**
+	 * Create a minimal JPEG file: the start of image marker, an APP1 EXIF segment with the
+	 * DateTime tag in IFD0 and the DateTimeOriginal tag in the Exif IFD, and the end of image
+	 * marker. The TIFF data is little endian, like most cameras are writing it.
+	 *
+	 * @return The JPEG template, the dates are set for each file.
+	 */
+	private static byte[] createJpegTemplate() {
+		ByteBuffer buffer = ByteBuffer.allocate(110);
+		buffer.put((byte) 0xFF).put((byte) 0xD8);
+		buffer.put((byte) 0xFF).put((byte) 0xE1).putShort((short) 104);
+		buffer.put("Exif".getBytes(ASCII)).put((byte) 0).put((byte) 0);
+		ByteBuffer tiff = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		tiff.put((byte) 'I').put((byte) 'I').putShort((short) 0x2A).putInt(8);
+		// IFD0 at 8: DateTime and the Exif IFD pointer
+		tiff.putShort((short) 2);
+		tiff.putShort((short) 0x0132).putShort((short) 2).putInt(20).putInt(38);
+		tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(58);
+		tiff.putInt(0);
+		tiff.position(58);
+		// Exif IFD at 58: DateTimeOriginal
+		tiff.putShort((short) 1);
+		tiff.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(76);
+		tiff.putInt(0);
+		buffer.position(buffer.position() + 96);
+		buffer.put((byte) 0xFF).put((byte) 0xD9);
+		return buffer.array();
+	}
+
+	/**
+	 * Create a minimal MP4 file: a file type box and a movie box with a version 0 movie header.
+	 *
+	 * @return The MP4 template, the times are set for each file.
+	 */
+	private static byte[] createMp4Template() {
+		ByteBuffer buffer = ByteBuffer.allocate(136);
+		buffer.putInt(20).put("ftyp".getBytes(ASCII)).put("isom".getBytes(ASCII)).putInt(0x200)
+				.put("isom".getBytes(ASCII));
+		buffer.putInt(116).put("moov".getBytes(ASCII));
+		buffer.putInt(108).put("mvhd".getBytes(ASCII));
+		buffer.putInt(0); // version and flags
+		buffer.putInt(0).putInt(0); // creation and modification times
+		buffer.putInt(1000).putInt(10000); // time scale and duration, 10 seconds
+		buffer.putInt(0x00010000).putShort((short) 0x0100); // rate and volume
+		buffer.position(buffer.position() + 10);
+		buffer.putInt(0x00010000).putInt(0).putInt(0);
+		buffer.putInt(0).putInt(0x00010000).putInt(0);
+		buffer.putInt(0).putInt(0).putInt(0x40000000);
+		buffer.position(buffer.position() + 24);
+		buffer.putInt(2); // next track ID
+		return buffer.array();
+	}
+
+	/**
+	 * Obtain the first capture date, January 1 of the last year at 08:00 local time. The dates
+	 * should be recent, older years are replaced by the metadata date parser.
+	 *
+	 * @return The first capture date in milliseconds.
+	 */
+	private static long getStartMillis() {
+		Calendar calendar = new GregorianCalendar(Locale.US);
+		calendar.set(calendar.get(Calendar.YEAR) - 1, Calendar.JANUARY, 1, 8, 0, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	public int getFolderCount() {
+		return mFolderCount;
+	}
+
+	public int getImageCount() {
+		return mImageCount;
+	}
+
+	public int getVideoCount() {
+		return mVideoCount;
+	}
+
+	public int getBurstCount() {
+		return mBurstCount;
+	}
+
+	public int getRenamedCount() {
+		return mRenamedCount;
+	}
+
+	public int getThumbnailCount() {
+		return mThumbnailCount;
+	}
+
+	/**
+	 * Append a text summary of the generated library.
+	 *
+	 * @param sb The builder where the summary is appended.
+	 */
+	public void appendSummary(StringBuilder sb) {
+		sb.append("Library: ").append(mRoot.getAbsolutePath()).append('\n');
+		sb.append("folders: ").append(mFolderCount).append('\n');
+		sb.append("images: ").append(mImageCount).append('\n');
+		sb.append("videos: ").append(mVideoCount).append('\n');
+		sb.append("burst shots: ").append(mBurstCount).append('\n');
+		sb.append("already renamed files: ").append(mRenamedCount).append('\n');
+		sb.append("hidden thumbnails: ").append(mThumbnailCount).append('\n');
+		sb.append("bytes: ").append(mByteCount).append('\n');
+	}
+
+	public static void main(String[] args) throws IOException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if (!options.has("root")) {
+			System.err.println("Usage: LibraryGenerator --root DIR [--files 100000]"
+					+ " [--video-percent 15] [--burst-percent 25] [--renamed-percent 2]"
+					+ " [--folder-size 1000] [--renamed-format 'PIC_'yyyyMMdd_HHmmss] [--seed 20180101]");
+			System.exit(1);
+		}
+		LibraryGenerator generator = fromOptions(new File(options.getString("root", null)), options);
+		long start = System.nanoTime();
+		generator.generate();
+		long elapsed = System.nanoTime() - start;
+		StringBuilder sb = new StringBuilder();
+		generator.appendSummary(sb);
+		sb.append(String.format(Locale.US, "generated in %.1f s%n", elapsed / 1e9));
+		System.out.print(sb);
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in memory stand-in for the media store, used by the rename harness. The records are indexed
+ * by path, like the _DATA column, and updated after each rename in the same way the application
+ * updates the media store: the record with the old path receives the new path, title and display
+ * name. An optional delay is added to each operation, to simulate the content provider calls.
+ *
+ * @author Claudiu Ciobotariu
+ */
+class MediaStoreStandIn {
+	private final Map<String, Record> mRecords = new HashMap<>();
+	private final long mDelayNanos;
+	private int mNextId = 1;
+	private int mUpdates;
+	private int mMisses;
+
+	/**
+	 * A media store record.
+	 */
+	static class Record {
+		final int id;
+		final long dateAdded;
+		String data;
+		String title;
+		String displayName;
+
+		Record(int id, String data, long dateAdded) {
+			this.id = id;
+			this.data = data;
+			this.dateAdded = dateAdded;
+			this.displayName = data.substring(data.lastIndexOf('/') + 1);
+			int dot = displayName.lastIndexOf('.');
+			this.title = dot > 0 ? displayName.substring(0, dot) : displayName;
+		}
+	}
+
+	/**
+	 * Create the media store stand-in.
+	 *
+	 * @param delayMicros The delay added to each operation, in microseconds.
+	 */
+	MediaStoreStandIn(int delayMicros) {
+		mDelayNanos = delayMicros * 1000L;
+	}
+
+	/**
+	 * Insert records for all visible files of a folder tree, like the media scanner does.
+	 *
+	 * @param folder The root folder.
+	 * @return Number of inserted records.
+	 */
+	int index(File folder) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		int count = 0;
+		for (File file : files) {
+			if (file.isHidden()) {
+				continue;
+			}
+			if (file.isDirectory()) {
+				count += index(file);
+			} else {
+				insert(file.getAbsolutePath(), file.lastModified() / 1000);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Insert a record.
+	 *
+	 * @param path      The file path.
+	 * @param dateAdded The DATE_ADDED value, in seconds.
+	 */
+	synchronized void insert(String path, long dateAdded) {
+		mRecords.put(path, new Record(mNextId++, path, dateAdded));
+	}
+
+	/**
+	 * Update the record of a renamed file.
+	 *
+	 * @param oldPath     The old file path.
+	 * @param newPath     The new file path.
+	 * @param title       The new title.
+	 * @param displayName The new display name.
+	 * @return False if there was no record for the old path.
+	 */
+	boolean update(String oldPath, String newPath, String title, String displayName) {
+		if (mDelayNanos > 0) {
+			LockSupport.parkNanos(mDelayNanos);
+		}
+		synchronized (this) {
+			Record record = mRecords.remove(oldPath);
+			if (record == null) {
+				mMisses++;
+				return false;
+			}
+			record.data = newPath;
+			record.title = title;
+			record.displayName = displayName;
+			mRecords.put(newPath, record);
+			mUpdates++;
+			return true;
+		}
+	}
+
+	synchronized int getRecordCount() {
+		return mRecords.size();
+	}
+
+	synchronized int getUpdateCount() {
+		return mUpdates;
+	}
+
+	synchronized int getMissCount() {
+		return mMisses;
+	}
+}
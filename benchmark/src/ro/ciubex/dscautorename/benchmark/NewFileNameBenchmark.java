@@ -0,0 +1,85 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+import ro.ciubex.dscautorename.util.FileNameSequence;
+
+/**
+ * Measure the building of the new file names done by FileRenameThread.getNewFileName(), with
+ * the counter suffix added for the burst shots taken in the same second.
+ *
+ * @author Claudiu Ciobotariu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NewFileNameBenchmark {
+	@Param({"10", "1000", "100000"})
+	public int fileCount;
+
+	@Param({"false", "true"})
+	public boolean appendOriginalName;
+
+	private String[] mBaseNames;
+	private String[] mOriginalNames;
+	private FileNameSequence mSequence;
+	private int mIndex;
+
+	@Setup
+	public void setup() {
+		long[] dates = FileNameDataSet.captureDates(fileCount);
+		String[] fileNames = FileNameDataSet.fileNames(fileCount);
+		FileNameFormatter formatter = new FileNameFormatter("'PIC_'yyyyMMdd_HHmmss", Locale.US);
+		mBaseNames = new String[fileCount];
+		mOriginalNames = new String[fileCount];
+		for (int i = 0; i < fileCount; i++) {
+			mBaseNames[i] = formatter.format(dates[i]);
+			mOriginalNames[i] = fileNames[i].substring(0, fileNames[i].lastIndexOf('.'));
+		}
+		mSequence = new FileNameSequence("_%05d", Locale.US, appendOriginalName);
+	}
+
+	@Benchmark
+	public String next() {
+		if (mIndex == mBaseNames.length) {
+			mIndex = 0;
+		}
+		int i = mIndex++;
+		return mSequence.next(mBaseNames[i], mOriginalNames[i], ".jpg");
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import ro.ciubex.dscautorename.util.FileNamePatternMatcher;
+
+/**
+ * Measure the file name matching done by RenamePatternsUtilities.matchFileNameBefore(), for each
+ * scanned file. The compiled matcher is compared with the previous loop over the regular
+ * expressions.
+ *
+ * @author Claudiu Ciobotariu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PatternMatchBenchmark {
+	@Param({"10", "1000", "100000"})
+	public int fileCount;
+
+	private String[] mFileNames;
+	private FileNamePatternMatcher mMatcher;
+	private Pattern[] mPatterns;
+	private Locale mLocale;
+	private int mIndex;
+
+	@Setup
+	public void setup() {
+		mLocale = Locale.US;
+		mFileNames = FileNameDataSet.fileNames(fileCount);
+		mMatcher = FileNamePatternMatcher.compile(FileNameDataSet.PATTERNS, mLocale);
+		mPatterns = new Pattern[FileNameDataSet.PATTERNS.length];
+		String before;
+		for (int i = 0; i < mPatterns.length; i++) {
+			// the same star suffix added by FileNamePatternMatcher.compile()
+			before = FileNameDataSet.PATTERNS[i].toLowerCase(mLocale) + "*";
+			mPatterns[i] = Pattern.compile(FileNamePatternMatcher.wildcardToRegex(before));
+		}
+	}
+
+	private String nextFileName() {
+		if (mIndex == mFileNames.length) {
+			mIndex = 0;
+		}
+		return mFileNames[mIndex++];
+	}
+
+	@Benchmark
+	public int matcher() {
+		return mMatcher.match(nextFileName());
+	}
+
+	@Benchmark
+	public int regexLoop() {
+		String lower = nextFileName().toLowerCase(mLocale);
+		for (int i = 0; i < mPatterns.length; i++) {
+			if (mPatterns[i].matcher(lower).matches()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
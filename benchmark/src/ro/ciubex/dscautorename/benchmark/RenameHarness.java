@@ -0,0 +1,524 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ro.ciubex.dscautorename.util.DateTimeParser;
+import ro.ciubex.dscautorename.util.DirectoryNameIndex;
+import ro.ciubex.dscautorename.util.DirectoryTreeIndex;
+import ro.ciubex.dscautorename.util.ExifDateTimeReader;
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+import ro.ciubex.dscautorename.util.FileNamePatternMatcher;
+import ro.ciubex.dscautorename.util.FileNameSequence;
+import ro.ciubex.dscautorename.util.FolderScanner;
+import ro.ciubex.dscautorename.util.LegacyFolderScanner;
+import ro.ciubex.dscautorename.util.Mp4CreationTimeReader;
+import ro.ciubex.dscautorename.util.RenameMetrics;
+
+/**
+ * Headless rename run over a folder tree, reproducing on a desktop JVM the FileRenameThread file
+ * scan mode with the file date taken from the metadata: the folders are scanned using the
+ * folders index, the file names are matched against the patterns, the EXIF or the movie header
+ * date is read, the new name is built with the counter suffix and the name collisions are
+ * resolved, then the files are renamed and the media store stand-in is updated. The files of a
+ * folder are renamed by the same worker, in the listing order.
+ * <p>
+ * The harness reports the throughput, the exact per-file latency percentiles, the peak heap and
+ * the rename metrics of each stage. Without the --root option a library is generated in a
+ * temporary folder, using the LibraryGenerator options, and deleted at the end.
+ * <p>
+ * Usage: RenameHarness [--root DIR] [--keep false] [--patterns DSC_*.JPG:'PIC_'yyyyMMdd_HHmmss,...]
+ * [--suffix-format _%05d] [--append-original-name false] [--threads 2]
+ * [--media-store-delay-us 0] [LibraryGenerator options]
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class RenameHarness {
+	private static final String DEFAULT_PATTERNS = "DSC_*.JPG:'PIC_'yyyyMMdd_HHmmss,VID_*.mp4:'MOV_'yyyyMMdd_HHmmss";
+	private static final String DIRECTORY_TREE_INDEX_FILE = "directory_tree.idx";
+	private static final int MAX_SUFFIX_COUNT = 1000;
+
+	private final File mRoot;
+	private final File mCacheDir;
+	private final String mSignature;
+	private final FileNamePatternMatcher mMatcher;
+	private final FileNameFormatter[] mFormatters;
+	private final String mSuffixFormat;
+	private final boolean mAppendOriginalName;
+	private final int mThreads;
+	private final MediaStoreStandIn mMediaStore;
+	private final FolderScanner mScanner = new LegacyFolderScanner();
+	private final DirectoryNameIndex mNameIndex = new DirectoryNameIndex();
+	private final RenameMetrics mMetrics = new RenameMetrics();
+	private final AtomicInteger mLatencyCount = new AtomicInteger();
+	private final AtomicInteger mMetadataErrors = new AtomicInteger();
+	private long[] mLatencies;
+	private int mScannedCount;
+	private int mRenamed;
+	private int mFailed;
+	private long mElapsedNanos;
+	private long mPeakHeap;
+
+	/**
+	 * Create the harness.
+	 *
+	 * @param root               The folder tree to be renamed.
+	 * @param cacheDir           The folder where the folders index is saved.
+	 * @param patterns           The file name patterns, before:after pairs separated by comma.
+	 * @param suffixFormat       The format of the counter suffix.
+	 * @param appendOriginalName True if the original name should be appended.
+	 * @param threads            Number of rename workers.
+	 * @param mediaStore         The media store stand-in.
+	 */
+	public RenameHarness(File root, File cacheDir, String patterns, String suffixFormat,
+						 boolean appendOriginalName, int threads, MediaStoreStandIn mediaStore) {
+		mRoot = root;
+		mCacheDir = cacheDir;
+		String[] items = patterns.split(",");
+		String[] befores = new String[items.length];
+		mFormatters = new FileNameFormatter[items.length];
+		StringBuilder signature = new StringBuilder();
+		int separator;
+		for (int i = 0; i < items.length; i++) {
+			separator = items[i].indexOf(':');
+			if (separator < 1) {
+				throw new IllegalArgumentException("Invalid file name pattern: " + items[i]);
+			}
+			befores[i] = items[i].substring(0, separator);
+			mFormatters[i] = new FileNameFormatter(items[i].substring(separator + 1), Locale.US);
+			signature.append(befores[i]).append('|');
+		}
+		mSignature = signature.toString();
+		mMatcher = FileNamePatternMatcher.compile(befores, Locale.US);
+		mSuffixFormat = suffixFormat;
+		mAppendOriginalName = appendOriginalName;
+		mThreads = Math.max(1, threads);
+		mMediaStore = mediaStore;
+	}
+
+	/**
+	 * Execute the rename run.
+	 */
+	public void run() {
+		resetPeakHeap();
+		long runStart = RenameMetrics.start();
+		long startTime = RenameMetrics.start();
+		List<FolderTask> tasks = scan();
+		mMetrics.record(RenameMetrics.STAGE_SCAN, startTime);
+		mMetrics.add(RenameMetrics.COUNTER_FILES_SCANNED, mScannedCount);
+		mLatencies = new long[mScannedCount];
+		executeTasks(tasks);
+		for (FolderTask task : tasks) {
+			mRenamed += task.mRenamed;
+			mFailed += task.mFailed;
+		}
+		mMetrics.record(RenameMetrics.STAGE_RUN, runStart);
+		mElapsedNanos = System.nanoTime() - runStart;
+		mMetrics.increment(RenameMetrics.COUNTER_RUNS);
+		mMetrics.add(RenameMetrics.COUNTER_FILES_RENAMED, mRenamed);
+		mMetrics.add(RenameMetrics.COUNTER_FILES_FAILED, mFailed);
+		mPeakHeap = getPeakHeap();
+	}
+
+	/**
+	 * Scan the folder tree, the unchanged folders without matching files are skipped using the
+	 * folders index, like the application does.
+	 *
+	 * @return The folder tasks, in the scan order.
+	 */
+	private List<FolderTask> scan() {
+		Map<String, FolderTask> tasks = new LinkedHashMap<>();
+		DirectoryTreeIndex treeIndex = new DirectoryTreeIndex(new File(mCacheDir,
+				DIRECTORY_TREE_INDEX_FILE), mSignature);
+		treeIndex.load();
+		recursiveFolderScan(mRoot, mScanner.getLastModified(mRoot), treeIndex, tasks);
+		treeIndex.save();
+		return new ArrayList<>(tasks.values());
+	}
+
+	private void recursiveFolderScan(File folder, long lastModified, DirectoryTreeIndex treeIndex,
+									 Map<String, FolderTask> tasks) {
+		String folderPath = folder.getAbsolutePath();
+		DirectoryTreeIndex.Entry entry = treeIndex.getUnchanged(folderPath, lastModified);
+		if (entry != null) {
+			File subFolder;
+			for (String name : entry.getFolders()) {
+				subFolder = new File(folder, name);
+				recursiveFolderScan(subFolder, mScanner.getLastModified(subFolder), treeIndex, tasks);
+			}
+			return;
+		}
+		ScanVisitor visitor = new ScanVisitor(treeIndex, tasks);
+		if (mScanner.listFolder(folder, visitor)) {
+			treeIndex.put(folderPath, lastModified, visitor.mMatches, visitor.mFolders);
+		}
+	}
+
+	/**
+	 * Rename the files of all folders, each folder is renamed by a single worker.
+	 *
+	 * @param tasks The folder tasks.
+	 */
+	private void executeTasks(List<FolderTask> tasks) {
+		if (mThreads < 2) {
+			for (FolderTask task : tasks) {
+				task.renameFiles();
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+		for (final FolderTask task : tasks) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					task.renameFiles();
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				System.out.println("Renamed files: " + mLatencyCount.get() + "/" + mScannedCount);
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Rename a file, in the same way as FileRenameThread.mainRenameFile().
+	 *
+	 * @param task The folder task.
+	 * @param item The scanned file.
+	 * @return True if the file was renamed.
+	 */
+	private boolean renameFile(FolderTask task, ScannedFile item) {
+		File oldFile = item.file;
+		File folder = oldFile.getParentFile();
+		String name = oldFile.getName();
+		int dot = name.lastIndexOf('.');
+		String extension = dot > 0 ? name.substring(dot) : "";
+		String title = dot > 0 ? name.substring(0, dot) : name;
+		StringBuilder sb = task.mNameBuilder;
+		sb.setLength(0);
+		mFormatters[item.patternIndex].format(readFileDate(item), sb);
+		String baseName = sb.toString();
+		FileNameSequence sequence = task.mNameSequence;
+		String newFileName;
+		boolean exist;
+		do {
+			newFileName = sequence.next(baseName, title, extension);
+			exist = mNameIndex.contains(folder, newFileName);
+			if (!exist && new File(folder, newFileName).exists()) {
+				mNameIndex.add(folder, newFileName);
+				exist = true;
+			}
+		} while (exist && sequence.getCount() < MAX_SUFFIX_COUNT);
+		if (exist) {
+			return false;
+		}
+		File newFile = new File(folder, newFileName);
+		if (!renameFile(oldFile, newFile)) {
+			return false;
+		}
+		updateMediaStore(oldFile, newFile, sequence.getTitle());
+		if (sequence.getCount() == 1) {
+			File zeroFile = new File(folder, sequence.getPreviousName());
+			File newZeroFile = new File(folder, sequence.getNameZero());
+			if (renameFile(zeroFile, newZeroFile)) {
+				updateMediaStore(zeroFile, newZeroFile, sequence.getTitleZero());
+			}
+		}
+		return true;
+	}
+
+	private boolean renameFile(File oldFile, File newFile) {
+		long startTime = RenameMetrics.start();
+		boolean success = oldFile.renameTo(newFile);
+		mMetrics.record(RenameMetrics.STAGE_RENAME, startTime);
+		if (success) {
+			mNameIndex.onRenamed(oldFile, newFile);
+		}
+		return success;
+	}
+
+	private void updateMediaStore(File oldFile, File newFile, String title) {
+		long startTime = RenameMetrics.start();
+		mMediaStore.update(oldFile.getAbsolutePath(), newFile.getAbsolutePath(), title,
+				newFile.getName());
+		mMetrics.record(RenameMetrics.STAGE_MEDIA_STORE_UPDATE, startTime);
+		mMetrics.increment(RenameMetrics.COUNTER_MEDIA_STORE_OPERATIONS);
+	}
+
+	/**
+	 * Read the file date from the EXIF data or the movie header, the last modified time is used
+	 * if the metadata date could not be read.
+	 *
+	 * @param item The scanned file.
+	 * @return The file date in milliseconds.
+	 */
+	private long readFileDate(ScannedFile item) {
+		long startTime = RenameMetrics.start();
+		long milliseconds = -1;
+		String name = item.file.getName().toLowerCase(Locale.US);
+		try {
+			if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+				String dateTime = ExifDateTimeReader.readDateTime(item.file);
+				Date date = dateTime != null ? DateTimeParser.parseExifDateTimeString(dateTime) : null;
+				milliseconds = date != null ? date.getTime() : -1;
+			} else if (name.endsWith(".mp4")) {
+				long creationTime = Mp4CreationTimeReader.readCreationTime(item.file);
+				milliseconds = creationTime != -1 ? DateTimeParser.getMetadataDate(creationTime).getTime() : -1;
+			}
+		} catch (IOException e) {
+			mMetadataErrors.incrementAndGet();
+		}
+		mMetrics.record(RenameMetrics.STAGE_METADATA, startTime);
+		return milliseconds != -1 ? milliseconds : item.lastModified;
+	}
+
+	/**
+	 * Reset the peak usage of the heap memory pools, after a garbage collection, so the peak
+	 * heap is measured only for the rename run.
+	 */
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Obtain the peak heap usage, the sum of the peak usage of each heap memory pool. The pools
+	 * could reach their peaks at different moments, so the value is an upper bound.
+	 *
+	 * @return The peak heap usage in bytes.
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/**
+	 * Append a text report of the rename run.
+	 *
+	 * @param sb The builder where the report is appended.
+	 */
+	public void appendReport(StringBuilder sb) {
+		int count = Math.min(mLatencyCount.get(), mLatencies.length);
+		long[] latencies = Arrays.copyOf(mLatencies, count);
+		Arrays.sort(latencies);
+		double seconds = mElapsedNanos / 1e9;
+		sb.append("files scanned: ").append(mScannedCount).append('\n');
+		sb.append("files renamed: ").append(mRenamed).append('\n');
+		sb.append("files failed: ").append(mFailed).append('\n');
+		sb.append("metadata errors: ").append(mMetadataErrors.get()).append('\n');
+		sb.append("workers: ").append(mThreads).append('\n');
+		sb.append(String.format(Locale.US, "elapsed: %.3f s%n", seconds));
+		sb.append(String.format(Locale.US, "throughput: %.1f files/s%n",
+				seconds > 0 ? mScannedCount / seconds : 0));
+		sb.append(String.format(Locale.US, "per-file latency ms: p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+				getPercentileMillis(latencies, 500), getPercentileMillis(latencies, 990),
+				getPercentileMillis(latencies, 999), getPercentileMillis(latencies, 1000)));
+		sb.append(String.format(Locale.US, "peak heap: %.1f MB%n", mPeakHeap / 1048576.0));
+		sb.append("media store records: ").append(mMediaStore.getRecordCount())
+				.append(", updates: ").append(mMediaStore.getUpdateCount())
+				.append(", misses: ").append(mMediaStore.getMissCount()).append('\n');
+		mMetrics.appendReport(sb);
+	}
+
+	/**
+	 * Obtain an exact percentile of the sorted latencies, using the nearest rank.
+	 *
+	 * @param latencies The sorted latencies, in nanoseconds.
+	 * @param permille  The percentile, in thousandths.
+	 * @return The percentile in milliseconds, or zero if there is no latency.
+	 */
+	private static double getPercentileMillis(long[] latencies, int permille) {
+		if (latencies.length == 0) {
+			return 0;
+		}
+		int rank = (int) ((latencies.length * (long) permille + 999) / 1000);
+		return latencies[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	/**
+	 * A file found by the scan.
+	 */
+	private static class ScannedFile {
+		final File file;
+		final int patternIndex;
+		final long lastModified;
+
+		ScannedFile(File file, int patternIndex, long lastModified) {
+			this.file = file;
+			this.patternIndex = patternIndex;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * The files of a folder, renamed sequentially, in the scan order.
+	 */
+	private class FolderTask {
+		private final List<ScannedFile> mFiles = new ArrayList<>();
+		private final FileNameSequence mNameSequence = new FileNameSequence(mSuffixFormat,
+				Locale.US, mAppendOriginalName);
+		private final StringBuilder mNameBuilder = new StringBuilder();
+		private int mRenamed;
+		private int mFailed;
+
+		void renameFiles() {
+			long startTime;
+			for (ScannedFile item : mFiles) {
+				startTime = System.nanoTime();
+				if (renameFile(this, item)) {
+					mRenamed++;
+				} else {
+					mFailed++;
+				}
+				mLatencies[mLatencyCount.getAndIncrement()] = System.nanoTime() - startTime;
+			}
+		}
+	}
+
+	/**
+	 * Receive the folder entries, the sub folders are scanned recursively and the matching files
+	 * are added to the task of their folder.
+	 */
+	private class ScanVisitor implements FolderScanner.Visitor {
+		private final DirectoryTreeIndex mTreeIndex;
+		private final Map<String, FolderTask> mTasks;
+		private final List<String> mFolders = new ArrayList<>();
+		private int mMatches;
+		private int mIndex;
+
+		ScanVisitor(DirectoryTreeIndex treeIndex, Map<String, FolderTask> tasks) {
+			mTreeIndex = treeIndex;
+			mTasks = tasks;
+		}
+
+		@Override
+		public void onFolder(File folder, long lastModified) {
+			mFolders.add(folder.getName());
+			recursiveFolderScan(folder, lastModified, mTreeIndex, mTasks);
+		}
+
+		@Override
+		public boolean acceptFile(String fileName) {
+			mIndex = mMatcher.match(fileName);
+			return mIndex > -1;
+		}
+
+		@Override
+		public void onFile(File file, long lastModified, long size) {
+			String folderPath = file.getParent();
+			FolderTask task = mTasks.get(folderPath);
+			if (task == null) {
+				task = new FolderTask();
+				mTasks.put(folderPath, task);
+			}
+			task.mFiles.add(new ScannedFile(file, mIndex, lastModified));
+			mScannedCount++;
+			mMatches++;
+		}
+	}
+
+	/**
+	 * Delete a folder tree.
+	 *
+	 * @param file The folder or file to delete.
+	 */
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	public static void main(String[] args) throws IOException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		File root;
+		boolean generated = !options.has("root");
+		StringBuilder sb = new StringBuilder();
+		if (generated) {
+			root = Files.createTempDirectory("dsc_library").toFile();
+			LibraryGenerator generator = LibraryGenerator.fromOptions(root, options);
+			long start = System.nanoTime();
+			generator.generate();
+			generator.appendSummary(sb);
+			sb.append(String.format(Locale.US, "generated in %.1f s%n", (System.nanoTime() - start) / 1e9));
+			System.out.print(sb);
+			sb.setLength(0);
+		} else {
+			root = new File(options.getString("root", null));
+		}
+		File cacheDir = Files.createTempDirectory("dsc_cache").toFile();
+		MediaStoreStandIn mediaStore = new MediaStoreStandIn(options.getInt("media-store-delay-us", 0));
+		int records = mediaStore.index(root);
+		System.out.println("media store records: " + records);
+		RenameHarness harness = new RenameHarness(root, cacheDir,
+				options.getString("patterns", DEFAULT_PATTERNS),
+				options.getString("suffix-format", "_%05d"),
+				options.getBoolean("append-original-name", false),
+				options.getInt("threads", 2), mediaStore);
+		try {
+			harness.run();
+			harness.appendReport(sb);
+			System.out.print(sb);
+		} finally {
+			delete(cacheDir);
+			if (generated) {
+				if (options.getBoolean("keep", false)) {
+					System.out.println("Library kept: " + root.getAbsolutePath());
+				} else {
+					delete(root);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * JVM stand-in for the application Utilities class, which depends on the Android framework. It
+ * contains only the methods used by the plain Java classes compiled into the benchmark module.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class Utilities {
+
+	/**
+	 * Close a closeable object.
+	 *
+	 * @param closeable Object to be close.
+	 */
+	public static void doClose(Object closeable) {
+		if (closeable instanceof Closeable) {
+			try {
+				((Closeable) closeable).close();
+			} catch (IOException e) {
+				System.err.println("doClose IOException: " + e.getMessage());
+			}
+		}
+	}
+}
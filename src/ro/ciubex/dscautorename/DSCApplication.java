@@ -51,17 +51,20 @@ import android.util.Log;
 import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.ref.WeakReference;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.IllegalFormatException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import ro.ciubex.dscautorename.activity.RenameShortcutUpdateListener;
 import ro.ciubex.dscautorename.model.FileNameModel;
@@ -73,8 +76,12 @@ import ro.ciubex.dscautorename.service.FileRenameService;
 import ro.ciubex.dscautorename.service.FolderObserverService;
 import ro.ciubex.dscautorename.service.MediaContentJobService;
 import ro.ciubex.dscautorename.service.MediaStorageObserverService;
+import ro.ciubex.dscautorename.task.RenameTriggerScheduler;
 import ro.ciubex.dscautorename.task.LogThread;
+import ro.ciubex.dscautorename.task.RenameCoordinator;
 import ro.ciubex.dscautorename.task.RenameFileAsyncTask;
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+import ro.ciubex.dscautorename.util.RenameMetrics;
 import ro.ciubex.dscautorename.util.Utilities;
 
 /**
@@ -92,9 +99,13 @@ public class DSCApplication extends Application {
 	private File mLogsFolder;
 	private static int mVersionCode = -1;
 	private static String mVersionName = null;
-	private static boolean mRenameFileRequested;
-	private static boolean mRenameFileTaskCanceled;
-	private static boolean mRenameFileTaskRunning;
+	private RenameCoordinator mRenameCoordinator;
+	private final RenameMetrics mRenameMetrics = new RenameMetrics();
+	private RenameTriggerScheduler mRenameTriggerScheduler;
+	/**
+	 * The inotify watches are limited for each user, keep enough watches for other apps.
+	 */
+	private static final int MAX_FOLDER_OBSERVERS = 2000;
 	public static final int SERVICE_TYPE_DISABLED = 0;
 	public static final int SERVICE_TYPE_CAMERA = 1;
 	public static final int SERVICE_TYPE_CONTENT = 2;
@@ -102,7 +113,16 @@ public class DSCApplication extends Application {
 	public static final int SERVICE_TYPE_CAMERA_SERVICE = 4;
 
 	public static final String LOG_FILE_NAME = "DSC_app_logs.log";
-	private static LogThread logFileThread;
+	public static final String LOG_BINARY_FILE_NAME = "DSC_app_logs.bin";
+	private static final long LOG_SEGMENT_SIZE = 2 * 1024 * 1024;
+	private static final int LOG_SEGMENT_COUNT = 5;
+	private static final long LOG_FLUSH_TIMEOUT = 2000;
+	private static volatile LogThread logFileThread;
+	private static final long LOG_THREAD_RETRY_INTERVAL = 60000;
+	private static volatile long logFileThreadStartTime;
+	private static volatile boolean mDebugLogsEnabled = true;
+	public static final String KEY_DEBUG_LOGS_ENABLED = "debugLogsEnabled";
+	public static final String KEY_BINARY_LOGS_ENABLED = "binaryLogsEnabled";
 
 	public static final String KEY_SERVICE_TYPE = "serviceType";
 	public static final String KEY_FOLDER_SCANNING = "folderScanning";
@@ -118,6 +138,7 @@ public class DSCApplication extends Application {
 	private static final String KEY_RENAME_SERVICE_START_DELAY = "renameServiceStartDelay";
 	public static final String KEY_DELAY_UNIT = "delayUnit";
 	private static final String KEY_RENAME_FILE_DELAY = "renameFileDelay";
+	private static final String KEY_RENAME_WORKER_THREADS = "renameWorkerThreads";
 	private static final String KEY_REGISTERED_SERVICE_TYPE = "registeredServiceType";
 	private static final String KEY_RENAME_FILE_DATE_TYPE = "renameFileDateType";
 	private static final String KEY_APPEND_ORIGINAL_NAME = "appendOriginalName";
@@ -200,6 +221,7 @@ public class DSCApplication extends Application {
 		super.onCreate();
 		checkApplicationResources();
 		mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+		updateDebugLogsEnabled();
 		mBackupManager = new BackupManager(this);
 		initLocale();
 		mSdkInt = android.os.Build.VERSION.SDK_INT;
@@ -207,7 +229,7 @@ public class DSCApplication extends Application {
 		if (DSCApplication.SERVICE_TYPE_DISABLED != serviceType) {
 			checkRegisteredServiceType(false);
 		}
-		mFolderObserverMap = new HashMap<>();
+		mFolderObserverMap = new ConcurrentHashMap<>();
 		if (SERVICE_TYPE_FILE_OBSERVER == serviceType) {
 			initVolumes();
 			initFolderObserverList(false);
@@ -575,6 +597,22 @@ public class DSCApplication extends Application {
 		return df.format(date);
 	}
 
+	/**
+	 * Obtain a compiled file name formatter, used to format many dates with the same pattern.
+	 *
+	 * @param fileNameFormat The file name pattern format.
+	 * @return The file name formatter.
+	 */
+	public FileNameFormatter getFileNameFormatter(String fileNameFormat) {
+		try {
+			return new FileNameFormatter(fileNameFormat, mLocale);
+		} catch (Exception e) {
+			fileNameFormat = getApplicationContext().getString(R.string.file_name_format);
+			saveStringValue(KEY_FILE_NAME_FORMAT, fileNameFormat);
+			return new FileNameFormatter(fileNameFormat, mLocale);
+		}
+	}
+
 	/**
 	 * Check if the service is enabled.
 	 *
@@ -585,26 +623,83 @@ public class DSCApplication extends Application {
 	}
 
 	/**
-	 * Launch the auto rename task.
+	 * Launch the auto rename task. If a rename task is already running, the request is renamed by
+	 * the running task.
+	 *
+	 * @param listener The listener of a rename started by the user, or null for the rename service.
+	 *                 The listener is weakly referenced, if it is collected or finishing before
+	 *                 the launch the rename service is used.
+	 * @param noDelay  True if the rename should be started without delay.
+	 * @param fileUris The files to be renamed, or null for a full scan.
+	 * @param force    True if the rename should be done even if the service is disabled.
+	 * @return The completion of the rename task, or null if the service is disabled.
 	 */
-	public void launchAutoRenameTask(RenameFileAsyncTask.Listener listener, boolean noDelay, List<Uri> fileUris, boolean force) {
+	public Future<Integer> launchAutoRenameTask(RenameFileAsyncTask.Listener listener, final boolean noDelay,
+												List<Uri> fileUris, boolean force) {
 		if (force || isAutoRenameEnabled()) {
-			setRenameFileRequested(true);
-			if (!isRenameFileTaskRunning()) {
-				logD(TAG, "launchAutoRenameTask");
-				if (listener != null) {
-					new RenameFileAsyncTask(this, listener, noDelay, fileUris).execute();
-				} else {
-					startFileRenameService();
+			final WeakReference<RenameFileAsyncTask.Listener> listenerReference = new WeakReference<>(listener);
+			return getRenameCoordinator().submit(fileUris, listener != null,
+					new RenameCoordinator.Launcher() {
+						@Override
+						public boolean launch() {
+							logD(TAG, "launchAutoRenameTask");
+							RenameFileAsyncTask.Listener listener = listenerReference.get();
+							if (listener != null && !listener.isFinishing()) {
+								new RenameFileAsyncTask(DSCApplication.this, listener, noDelay).execute();
+								return true;
+							}
+							return startFileRenameService();
+						}
+					});
+		}
+		return null;
+	}
+
+	/**
+	 * Schedule the auto rename task, the triggers received in a short time are merged and a
+	 * single task is launched.
+	 *
+	 * @param fileUris The affected file URIs, or null if a full scan is required.
+	 * @param force    True if the rename should be done even if the service is disabled.
+	 */
+	public void scheduleAutoRenameTask(List<Uri> fileUris, boolean force) {
+		if (force || isAutoRenameEnabled()) {
+			synchronized (this) {
+				if (mRenameTriggerScheduler == null) {
+					mRenameTriggerScheduler = new RenameTriggerScheduler(this);
 				}
 			}
+			mRenameTriggerScheduler.trigger(fileUris, force);
 		}
 	}
 
+	/**
+	 * Obtain the coordinator of the rename runs.
+	 *
+	 * @return The rename coordinator.
+	 */
+	public synchronized RenameCoordinator getRenameCoordinator() {
+		if (mRenameCoordinator == null) {
+			mRenameCoordinator = new RenameCoordinator(this);
+		}
+		return mRenameCoordinator;
+	}
+
+	/**
+	 * Obtain the metrics of the rename runs.
+	 *
+	 * @return The rename metrics.
+	 */
+	public RenameMetrics getRenameMetrics() {
+		return mRenameMetrics;
+	}
+
 	/**
 	 * Start file rename service.
+	 *
+	 * @return True if the service was started.
 	 */
-	private void startFileRenameService() {
+	private boolean startFileRenameService() {
 		logD(TAG, "startFileRenameService");
 		try {
 			if (mSdkInt >= Build.VERSION_CODES.O) {
@@ -612,9 +707,11 @@ public class DSCApplication extends Application {
 			} else { // old service start
 				startService(new Intent(this, FileRenameService.class));
 			}
+			return true;
 		} catch (Exception e) {
 			logE(TAG, "startFileRenameService: " + e.getMessage(), e);
 		}
+		return false;
 	}
 
 	/**
@@ -699,41 +796,20 @@ public class DSCApplication extends Application {
 		saveStringValue(KEY_ORIGINAL_FILE_NAME_PATTERN, fileNamePattern);
 	}
 
-	/**
-	 * Check if rename file is requested.
-	 *
-	 * @return the renameFileRequested
-	 */
-	public boolean isRenameFileRequested() {
-		return DSCApplication.mRenameFileRequested;
-	}
-
-	/**
-	 * Set renameFileRequest flag.
-	 *
-	 * @param renameFileRequested the renameFileRequested to set
-	 */
-	public void setRenameFileRequested(boolean renameFileRequested) {
-		logD(TAG, "setRenameFileRequested(" + renameFileRequested + ")");
-		DSCApplication.mRenameFileRequested = renameFileRequested;
-	}
-
 	/**
 	 * Obtain the rename file task cancel boolean value.
 	 *
 	 * @return The rename file task cancel boolean value.
 	 */
 	public boolean isRenameFileTaskCanceled() {
-		return DSCApplication.mRenameFileTaskCanceled;
+		return getRenameCoordinator().isCanceled();
 	}
 
 	/**
-	 * Set the rename file task cancel flag.
-	 *
-	 * @param flag The rename file task cancel boolean value.
+	 * Cancel the running rename file task, if any.
 	 */
-	public void setRenameFileTaskCanceled(boolean flag) {
-		DSCApplication.mRenameFileTaskCanceled = flag;
+	public void cancelRenameFileTask() {
+		getRenameCoordinator().cancel();
 	}
 
 	/**
@@ -742,16 +818,7 @@ public class DSCApplication extends Application {
 	 * @return the renameFileTaskRunning
 	 */
 	public boolean isRenameFileTaskRunning() {
-		return DSCApplication.mRenameFileTaskRunning;
-	}
-
-	/**
-	 * Set rename file task is running flag.
-	 *
-	 * @param renameFileTaskRunning the renameFileTaskRunning to set
-	 */
-	public void setRenameFileTaskRunning(boolean renameFileTaskRunning) {
-		DSCApplication.mRenameFileTaskRunning = renameFileTaskRunning;
+		return getRenameCoordinator().isRunning();
 	}
 
 	/**
@@ -824,6 +891,15 @@ public class DSCApplication extends Application {
 		return mSharedPreferences.getInt(KEY_RENAME_FILE_DELAY, 0);
 	}
 
+	/**
+	 * Obtain the number of worker threads used to rename files from different folders.
+	 *
+	 * @return The number of rename worker threads, at least one.
+	 */
+	public int getRenameWorkerThreads() {
+		return Math.max(1, mSharedPreferences.getInt(KEY_RENAME_WORKER_THREADS, 2));
+	}
+
 	/**
 	 * Obtain the selected service type.
 	 *
@@ -969,16 +1045,25 @@ public class DSCApplication extends Application {
 	 * @return Formatted value.
 	 */
 	public String getFormattedFileNameSuffix(int value) {
+		return String.format(mLocale, getFileNameSuffixFormat(), value);
+	}
+
+	/**
+	 * Obtain the file name suffix format, if the saved format is not valid the default format is
+	 * saved and returned.
+	 *
+	 * @return The file name suffix format.
+	 */
+	public String getFileNameSuffixFormat() {
 		String defFormat = getApplicationContext().getString(R.string.file_name_suffix_format_value);
 		String format = mSharedPreferences.getString(KEY_FILE_NAME_SUFFIX_FORMAT, defFormat);
-		String result;
 		try {
-			result = String.format(mLocale, format, value);
+			String.format(mLocale, format, 0);
 		} catch (IllegalFormatException e) {
-			result = String.format(mLocale, defFormat, value);
+			format = defFormat;
 			saveStringValue(KEY_FILE_NAME_SUFFIX_FORMAT, defFormat);
 		}
-		return result;
+		return format;
 	}
 
 	/**
@@ -1303,8 +1388,7 @@ public class DSCApplication extends Application {
 	 * @param msg The message you would like logged.
 	 */
 	public void logE(String tag, String msg) {
-		Log.e(tag, msg);
-		writeLogFile(System.currentTimeMillis(), "ERROR\t" + tag + "\t" + msg, null);
+		writeLog(Log.ERROR, tag, msg, null, null);
 	}
 
 	/**
@@ -1316,8 +1400,7 @@ public class DSCApplication extends Application {
 	 * @param throwable An exception to log
 	 */
 	public void logE(String tag, String msg, Throwable throwable) {
-		Log.e(tag, msg, throwable);
-		writeLogFile(System.currentTimeMillis(), "ERROR\t" + tag + "\t" + msg, throwable);
+		writeLog(Log.ERROR, tag, msg, null, throwable);
 	}
 
 	/**
@@ -1328,45 +1411,166 @@ public class DSCApplication extends Application {
 	 * @param msg The message you would like logged.
 	 */
 	public void logD(String tag, String msg) {
-		Log.d(tag, msg);
-		writeLogFile(System.currentTimeMillis(), "DEBUG\t" + tag + "\t" + msg, null);
+		if (mDebugLogsEnabled) {
+			writeLog(Log.DEBUG, tag, msg, null, null);
+		}
 	}
 
 	/**
-	 * Write the log message to the app log file.
-	 *	 *
-	 * @param milliseconds Log timestamp.
-	 * @param message      Log text.
-	 * @param throwable    An exception to log
+	 * Send a debug log message, the message is built only if the debug logs are enabled.
+	 *
+	 * @param tag      Used to identify the source of a log message.
+	 * @param template The message template, the {} placeholder is replaced by the argument.
+	 * @param arg      The template argument.
 	 */
-	private void writeLogFile(long milliseconds, String message, Throwable throwable) {
-		if (checkLogFileThread()) {
-			logFileThread.addLog(milliseconds, message, throwable);
+	public void logD(String tag, String template, Object arg) {
+		if (mDebugLogsEnabled) {
+			writeLog(Log.DEBUG, tag, template, new Object[]{arg}, null);
 		}
 	}
 
 	/**
-	 * Check if log file thread exist and create it if not.
+	 * Send a debug log message, the message is built only if the debug logs are enabled.
+	 *
+	 * @param tag      Used to identify the source of a log message.
+	 * @param template The message template, the {} placeholders are replaced by the arguments.
+	 * @param arg1     The first template argument.
+	 * @param arg2     The second template argument.
 	 */
-	private boolean checkLogFileThread() {
-		if (logFileThread == null) {
-			try {
-				logFileThread = new LogThread(getLogsFolder());
-				new Thread(logFileThread).start();
-			} catch (Exception e) {
-				logE(TAG, "Exception: " + e.getMessage(), e);
+	public void logD(String tag, String template, Object arg1, Object arg2) {
+		if (mDebugLogsEnabled) {
+			writeLog(Log.DEBUG, tag, template, new Object[]{arg1, arg2}, null);
+		}
+	}
+
+	/**
+	 * Send a debug log message, the message is built only if the debug logs are enabled.
+	 *
+	 * @param tag      Used to identify the source of a log message.
+	 * @param template The message template, the {} placeholders are replaced by the arguments.
+	 * @param args     The template arguments.
+	 */
+	public void logD(String tag, String template, Object... args) {
+		if (mDebugLogsEnabled) {
+			writeLog(Log.DEBUG, tag, template, args, null);
+		}
+	}
+
+	/**
+	 * Check if the debug logs are enabled, used to skip building expensive log messages.
+	 *
+	 * @return True if the debug logs are enabled.
+	 */
+	public boolean isDebugLogsEnabled() {
+		return mDebugLogsEnabled;
+	}
+
+	/**
+	 * Read the debug logs preference, should be invoked when the preference is changed.
+	 */
+	public void updateDebugLogsEnabled() {
+		DSCApplication.mDebugLogsEnabled = mSharedPreferences.getBoolean(KEY_DEBUG_LOGS_ENABLED, true);
+	}
+
+	/**
+	 * Check if the logs should be written in the compact binary format.
+	 *
+	 * @return True if the binary log format is enabled.
+	 */
+	private boolean isBinaryLogsEnabled() {
+		return mSharedPreferences != null && mSharedPreferences.getBoolean(KEY_BINARY_LOGS_ENABLED, false);
+	}
+
+	/**
+	 * Read the binary logs preference, should be invoked when the preference is changed. The log
+	 * thread is closed if the format is changed, a new log thread is started for the next log.
+	 */
+	public void updateLogFormat() {
+		synchronized (DSCApplication.class) {
+			LogThread logThread = logFileThread;
+			if (logThread != null && logThread.isBinary() != isBinaryLogsEnabled()) {
+				logFileThread = null;
+				Utilities.doClose(logThread);
+			}
+		}
+	}
+
+	/**
+	 * Send the log entry to the log thread, which writes it to the logcat and to the app log file.
+	 *
+	 * @param priority  The log priority.
+	 * @param tag       The log tag.
+	 * @param template  Log text.
+	 * @param args      The template arguments, or null.
+	 * @param throwable An exception to log
+	 */
+	private void writeLog(int priority, String tag, String template, Object[] args, Throwable throwable) {
+		LogThread logThread = checkLogFileThread();
+		if (logThread == null
+				|| !logThread.addLog(priority, tag, System.currentTimeMillis(), template, args, throwable)) {
+			StringBuilder sb = new StringBuilder();
+			LogThread.appendMessage(sb, template, args);
+			if (throwable != null) {
+				sb.append('\n').append(Log.getStackTraceString(throwable));
 			}
+			Log.println(priority, tag, sb.toString());
 		}
-		return logFileThread != null;
 	}
 
 	/**
-	 * Obtain the log file.
+	 * Check if log file thread exist and create it if not. A log thread stopped because the log
+	 * file could not be written is replaced, but not more often than LOG_THREAD_RETRY_INTERVAL,
+	 * meanwhile the logs are sent only to the logcat. The log thread field is read only once,
+	 * because it could be changed by updateLogFormat().
 	 *
-	 * @return The log file.
+	 * @return The log thread, or null if it could not be created.
 	 */
-	public File getLogFile() {
-		return logFileThread != null ? logFileThread.getLogFile() : null;
+	private LogThread checkLogFileThread() {
+		LogThread logThread = logFileThread;
+		if (isLogThreadRequired(logThread)) {
+			synchronized (DSCApplication.class) {
+				logThread = logFileThread;
+				if (isLogThreadRequired(logThread)) {
+					logFileThreadStartTime = System.currentTimeMillis();
+					try {
+						logThread = new LogThread(getLogsFolder(), LOG_SEGMENT_SIZE, LOG_SEGMENT_COUNT,
+								isBinaryLogsEnabled());
+						new Thread(logThread, "LogWriter").start();
+						logFileThread = logThread;
+					} catch (Exception e) {
+						logThread = null;
+						Log.e(TAG, "Exception: " + e.getMessage(), e);
+					}
+				}
+			}
+		}
+		return logThread;
+	}
+
+	/**
+	 * Check if a new log thread should be started.
+	 *
+	 * @param logThread The current log thread.
+	 * @return True if there is no log thread, or if the current one is closing and the retry
+	 * interval is passed.
+	 */
+	private boolean isLogThreadRequired(LogThread logThread) {
+		return logThread == null || (logThread.isClosing()
+				&& System.currentTimeMillis() - logFileThreadStartTime >= LOG_THREAD_RETRY_INTERVAL);
+	}
+
+	/**
+	 * Obtain the log files, the pending logs are written first.
+	 *
+	 * @return The log files, from the oldest to the current one.
+	 */
+	public List<File> getLogFiles() {
+		LogThread logThread = logFileThread;
+		if (logThread != null) {
+			logThread.flush(LOG_FLUSH_TIMEOUT);
+			return logThread.getLogFiles();
+		}
+		return new ArrayList<>();
 	}
 
 	/**
@@ -1565,9 +1769,11 @@ public class DSCApplication extends Application {
 			SelectedFolderModel[] folders = getSelectedFolders();
 			if (folders != null && folders.length > 0) {
 				File file;
-				for (SelectedFolderModel folder : folders) {
-					file = new File(folder.getFullPath());
-					registerRecursivelyPath(file, startWatching);
+				synchronized (mFolderObserverMap) {
+					for (SelectedFolderModel folder : folders) {
+						file = new File(folder.getFullPath());
+						registerRecursivelyPath(file, startWatching);
+					}
 				}
 			}
 		}
@@ -1584,6 +1790,10 @@ public class DSCApplication extends Application {
 			String path = file.getAbsolutePath();
 			FolderObserver observer = mFolderObserverMap.get(path);
 			if (observer == null) {
+				if (mFolderObserverMap.size() >= MAX_FOLDER_OBSERVERS) {
+					logE(TAG, "registerRecursivelyPath: too many observers, " + path + " is not watched.");
+					return;
+				}
 				logD(TAG, "registerRecursivelyPath: " + path);
 				observer = new FolderObserver(this, path);
 				if (startWatching) {
@@ -1608,6 +1818,42 @@ public class DSCApplication extends Application {
 		}
 	}
 
+	/**
+	 * Register observers for a new folder and its subfolders, used when a folder is created or
+	 * moved inside of a watched folder.
+	 *
+	 * @param folder The new folder.
+	 */
+	public void addFolderObserverTree(File folder) {
+		if (SERVICE_TYPE_FILE_OBSERVER == getServiceType()) {
+			synchronized (mFolderObserverMap) {
+				registerRecursivelyPath(folder, true);
+			}
+		}
+	}
+
+	/**
+	 * Stop and remove the observers of a folder and its subfolders, used when a watched folder
+	 * is deleted or moved.
+	 *
+	 * @param path The path of the removed folder.
+	 */
+	public void removeFolderObserverTree(String path) {
+		String prefix = path + File.separator;
+		synchronized (mFolderObserverMap) {
+			Iterator<Map.Entry<String, FolderObserver>> iterator = mFolderObserverMap.entrySet().iterator();
+			Map.Entry<String, FolderObserver> entry;
+			while (iterator.hasNext()) {
+				entry = iterator.next();
+				if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+					logD(TAG, "removeFolderObserverTree: " + entry.getKey());
+					entry.getValue().stopWatching();
+					iterator.remove();
+				}
+			}
+		}
+	}
+
 	/**
 	 * Check if the folder is ok to be watched.
 	 *
@@ -1646,10 +1892,12 @@ public class DSCApplication extends Application {
 	public void cleanupObservers() {
 		if (mFolderObserverMap != null && !mFolderObserverMap.isEmpty()) {
 			logD(TAG, "cleanupObservers");
-			for (FolderObserver observer : mFolderObserverMap.values()) {
-				observer.stopWatching();
+			synchronized (mFolderObserverMap) {
+				for (FolderObserver observer : mFolderObserverMap.values()) {
+					observer.stopWatching();
+				}
+				mFolderObserverMap.clear();
 			}
-			mFolderObserverMap.clear();
 		}
 	}
 
@@ -219,7 +219,7 @@ public class RenameDlgActivity extends Activity implements
 	 */
 	private void doStopRenameService() {
 		if (mApplication.isRenameFileTaskRunning()) {
-			mApplication.setRenameFileTaskCanceled(true);
+			mApplication.cancelRenameFileTask();
 		} else {
 			doFinish();
 		}
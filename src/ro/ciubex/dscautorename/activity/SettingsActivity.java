@@ -85,9 +85,11 @@ import ro.ciubex.dscautorename.model.SelectedFolderModel;
 import ro.ciubex.dscautorename.preference.SeekBarPreference;
 import ro.ciubex.dscautorename.provider.CachedFileProvider;
 import ro.ciubex.dscautorename.task.AsyncTaskResult;
+import ro.ciubex.dscautorename.task.BinaryLogDecoder;
 import ro.ciubex.dscautorename.task.RenameFileAsyncTask;
 import ro.ciubex.dscautorename.task.SettingsFileUtilAsyncTask;
 import ro.ciubex.dscautorename.util.DevicesUtils;
+import ro.ciubex.dscautorename.util.RenameMetrics;
 import ro.ciubex.dscautorename.util.Utilities;
 
 /**
@@ -120,6 +122,7 @@ public class SettingsActivity extends PreferenceActivity implements
     private Preference mHideRenameServiceStartConfirmation;
     private Preference mManuallyStartRename;
     private Preference mFileRenameCount;
+    private Preference mRenameMetricsPref;
     private Preference mRequestPermissions;
     private Preference mExportSettings;
     private Preference mImportSettings;
@@ -144,6 +147,7 @@ public class SettingsActivity extends PreferenceActivity implements
     private static final int ID_CONFIRMATION_IMPORT_SETTINGS = 6;
     private static final int ID_CONFIRMATION_USE_INTERNAL_SELECT_FOLDER = 7;
     private static final int ID_CONFIRMATION_ENABLE_FOLDER_FILES_SCANNING = 8;
+    private static final int ID_CONFIRMATION_RESET_RENAME_METRICS = 9;
     private int confirmedActionId = -1;
     private static final int REQUEST_SEND_REPORT = 1;
     public static final int REQUEST_OPEN_DOCUMENT_TREE = 42;
@@ -220,6 +224,7 @@ public class SettingsActivity extends PreferenceActivity implements
         mAppendOriginalName = findPreference("appendOriginalName");
         mManuallyStartRename = findPreference("manuallyStartRename");
         mFileRenameCount = findPreference("fileRenameCount");
+        mRenameMetricsPref = findPreference("renameMetrics");
         mRequestPermissions = findPreference("requestPermissions");
         mExportSettings = findPreference("exportSettings");
         mImportSettings = findPreference("importSettings");
@@ -290,6 +295,15 @@ public class SettingsActivity extends PreferenceActivity implements
                         return true;
                     }
                 });
+        mRenameMetricsPref
+                .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+
+                    @Override
+                    public boolean onPreferenceClick(Preference preference) {
+                        onRenameMetrics();
+                        return true;
+                    }
+                });
         mRequestPermissions.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
 
             @Override
@@ -487,6 +501,10 @@ public class SettingsActivity extends PreferenceActivity implements
             mApplication.checkRegisteredServiceType(false);
         } else if (DSCApplication.KEY_ENABLED_FOLDER_SCANNING.equals(key)) {
             mApplication.updateFolderObserverList();
+        } else if (DSCApplication.KEY_DEBUG_LOGS_ENABLED.equals(key)) {
+            mApplication.updateDebugLogsEnabled();
+        } else if (DSCApplication.KEY_BINARY_LOGS_ENABLED.equals(key)) {
+            mApplication.updateLogFormat();
         } else if (DSCApplication.KEY_LANGUAGE_CODE.equals(key) ||
                 DSCApplication.KEY_APP_THEME.equals(key)) {
             doPrepareSummaries = false;
@@ -620,6 +638,11 @@ public class SettingsActivity extends PreferenceActivity implements
         mFileRenameCount.setTitle(mApplication.getString(
                 R.string.file_rename_count_title,
                 mApplication.getFileRenameCount()));
+        RenameMetrics metrics = mApplication.getRenameMetrics();
+        mRenameMetricsPref.setSummary(mApplication.getString(R.string.rename_metrics_desc,
+                metrics.getCounter(RenameMetrics.COUNTER_RUNS),
+                metrics.getCounter(RenameMetrics.COUNTER_FILES_RENAMED),
+                metrics.getAverageMillisPerFile()));
         mBuildVersion.setSummary(mApplication.getVersionName());
     }
 
@@ -733,6 +756,16 @@ public class SettingsActivity extends PreferenceActivity implements
         }
     }
 
+    /**
+     * Method invoked when was pressed the rename metrics preference.
+     */
+    private void onRenameMetrics() {
+        StringBuilder sb = new StringBuilder();
+        mApplication.getRenameMetrics().appendReport(sb);
+        sb.append('\n').append(mApplication.getApplicationContext().getString(R.string.rename_metrics_confirmation));
+        showConfirmationDialog(sb.toString(), false, ID_CONFIRMATION_RESET_RENAME_METRICS);
+    }
+
     /**
      * Method invoked when was pressed the request permission preference.
      */
@@ -904,6 +937,10 @@ public class SettingsActivity extends PreferenceActivity implements
             case ID_CONFIRMATION_RESET_RENAME_COUNTER:
                 confirmedResetFileRenameCounter();
                 break;
+            case ID_CONFIRMATION_RESET_RENAME_METRICS:
+                mApplication.getRenameMetrics().reset();
+                prepareSummaries();
+                break;
             case ID_CONFIRMATION_DEBUG_REPORT:
                 confirmedSendReport(mApplication.getApplicationContext().getString(R.string.send_debug_email_title));
                 break;
@@ -1060,7 +1097,7 @@ public class SettingsActivity extends PreferenceActivity implements
 
     @Override
     public void onProgressCancel() {
-        mApplication.setRenameFileTaskCanceled(true);
+        mApplication.cancelRenameFileTask();
     }
 
     /**
@@ -1238,6 +1275,16 @@ public class SettingsActivity extends PreferenceActivity implements
         writer.write("---------------------------------------------------------" + '\n');
     }
 
+    /**
+     * Generate debugging report with the rename metrics.
+     */
+    private void generateRenameMetricsReport(FileWriter writer) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        mApplication.getRenameMetrics().appendReport(sb);
+        writer.write(sb.toString());
+        writer.write("---------------------------------------------------------" + '\n');
+    }
+
     /**
      * Generate debugging report with contents of media store.
      */
@@ -1256,17 +1303,49 @@ public class SettingsActivity extends PreferenceActivity implements
      * @return The archive file which should contain the logs.
      */
     private File getLogArchive(File logsFolder) {
-        File logFile = mApplication.getLogFile();
         File logcatFile = getLogcatFile(logsFolder);
-        List<File> files = new ArrayList<>();
-        if (logFile != null) {
-            files.add(logFile);
-        }
+        List<File> decodedFiles = new ArrayList<>();
+        List<File> files = getReadableLogFiles(logsFolder, decodedFiles);
         files.add(logcatFile);
         Date now = new Date();
         SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
         String archiveName = "DSC_logs_" + format.format(now) + ".zip";
-        return getArchives(files, logsFolder, archiveName);
+        File archive = getArchives(files, logsFolder, archiveName);
+        for (File file : decodedFiles) {
+            if (file.exists() && !file.delete()) {
+                mApplication.logE(TAG, "Unable to delete the decoded log file: " + file.getName());
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Obtain the application log files, the binary log files are decoded to text files.
+     *
+     * @param logsFolder   The logs folder where the decoded files are saved.
+     * @param decodedFiles The list where the decoded files are added, those should be deleted
+     *                     after the archive is created.
+     * @return The log files to be added to the archive.
+     */
+    private List<File> getReadableLogFiles(File logsFolder, List<File> decodedFiles) {
+        List<File> files = new ArrayList<>();
+        for (File file : mApplication.getLogFiles()) {
+            if (file.getName().endsWith(".bin")) {
+                File textFile = new File(logsFolder, file.getName() + ".log");
+                decodedFiles.add(textFile);
+                try {
+                    new BinaryLogDecoder().decode(file, textFile);
+                    files.add(textFile);
+                } catch (IOException e) {
+                    mApplication.logE(TAG, "Unable to decode the log file: " + file.getName(), e);
+                    files.add(textFile);
+                    files.add(file);
+                }
+            } else {
+                files.add(file);
+            }
+        }
+        return files;
     }
 
     /**
@@ -1358,6 +1437,7 @@ public class SettingsActivity extends PreferenceActivity implements
             } while (true);
             generateMediaStoreQueries(writer);
             generateMountPointsReport(writer);
+            generateRenameMetricsReport(writer);
             shell.waitFor();
         } catch (IOException e) {
             mApplication.logE(TAG, "getLogcatFile failed: IOException", e);
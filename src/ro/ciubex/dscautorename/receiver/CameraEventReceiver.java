@@ -23,8 +23,11 @@ import ro.ciubex.dscautorename.DSCApplication;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 
+import java.util.Collections;
+
 /**
  * Define a receiver when is take picture.
  *
@@ -66,7 +69,8 @@ public class CameraEventReceiver extends BroadcastReceiver {
                     boolean process = isPicture
                             || (isVideo && mApplication.isRenameVideoEnabled());
                     if (process) {
-                        mApplication.launchAutoRenameTask(null, false, null, false);
+                        Uri uri = intent.getData();
+                        mApplication.scheduleAutoRenameTask(uri != null ? Collections.singletonList(uri) : null, false);
                     }
                 }
             }
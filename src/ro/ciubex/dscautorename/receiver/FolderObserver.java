@@ -18,9 +18,11 @@
  */
 package ro.ciubex.dscautorename.receiver;
 
+import android.net.Uri;
 import android.os.FileObserver;
 
 import java.io.File;
+import java.util.Collections;
 
 import ro.ciubex.dscautorename.DSCApplication;
 
@@ -33,10 +35,15 @@ public class FolderObserver extends FileObserver {
 	private static final String TAG = FolderObserver.class.getName();
 	private DSCApplication mApplication;
 
+	/**
+	 * The inotify flag set when the event subject is a directory.
+	 */
+	private static final int IN_ISDIR = 0x40000000;
+
 	private static final int MASK = (FileObserver.CREATE |
+			FileObserver.CLOSE_WRITE |
 			FileObserver.DELETE |
 			FileObserver.DELETE_SELF |
-			FileObserver.MODIFY |
 			FileObserver.MOVED_FROM |
 			FileObserver.MOVED_TO |
 			FileObserver.MOVE_SELF);
@@ -57,41 +64,50 @@ public class FolderObserver extends FileObserver {
 	 */
 	@Override
 	public void onEvent(int event, String path) {
+		if (mApplication == null) {
+			return;
+		}
+		boolean isDirectory = (event & IN_ISDIR) != 0;
 		switch (event & FileObserver.ALL_EVENTS) {
-			case FileObserver.CREATE:
+			case FileObserver.CLOSE_WRITE:
 				checkAutoRenameTask(path);
 				break;
+			case FileObserver.CREATE:
+				if (isDirectory && path != null) {
+					mApplication.addFolderObserverTree(new File(getFullPath(path)));
+				}
+				break;
+			case FileObserver.MOVED_TO:
+				if (!isDirectory) {
+					// the files renamed from a temporary name or moved in have no CLOSE_WRITE
+					checkAutoRenameTask(path);
+				} else if (path != null) {
+					mApplication.addFolderObserverTree(new File(getFullPath(path)));
+				}
+				break;
 			case FileObserver.DELETE:
-			case FileObserver.DELETE_SELF:
-			case FileObserver.MODIFY:
 			case FileObserver.MOVED_FROM:
-			case FileObserver.MOVED_TO:
+				if (isDirectory && path != null) {
+					mApplication.removeFolderObserverTree(getFullPath(path));
+				}
+				break;
+			case FileObserver.DELETE_SELF:
 			case FileObserver.MOVE_SELF:
-				checkForFolder(path);
+				mApplication.removeFolderObserverTree(mRootPath);
 				break;
 		}
 	}
 
 	/**
-	 * Check auto rename task and launch it if necessary.
-	 */
-	private void checkAutoRenameTask(String path) {
-		if (mApplication != null) {
-			mApplication.launchAutoRenameTask(null, false, null, false);
-		}
-		checkForFolder(path);
-	}
-
-	/**
-	 * Check if the current path is actually a folder, if it is a folder should be updated observers.
+	 * Launch the auto rename task only for the written or moved in file, the file is renamed
+	 * after it was closed or moved, so it is completely written.
 	 *
-	 * @param path Path to be checked.
+	 * @param path The path of the file, relative to the observed folder.
 	 */
-	private void checkForFolder(String path) {
-		String fullPath = getFullPath(path);
-		if (mApplication != null && isDirectoryCreated(fullPath)) {
-			mApplication.logD(TAG, "checkForFolder: " + fullPath);
-			mApplication.updateFolderObserverList();
+	private void checkAutoRenameTask(String path) {
+		if (path != null) {
+			File file = new File(getFullPath(path));
+			mApplication.scheduleAutoRenameTask(Collections.singletonList(Uri.fromFile(file)), false);
 		}
 	}
 
@@ -108,17 +124,6 @@ public class FolderObserver extends FileObserver {
 		return mRootPath + File.separator + file;
 	}
 
-	/**
-	 * Check if the path is a directory.
-	 *
-	 * @param path Path to be checked.
-	 * @return True if the path is a directory.
-	 */
-	private boolean isDirectoryCreated(String path) {
-		File f = new File(path);
-		return (f.exists() && f.isDirectory());
-	}
-
 	/**
 	 * Get the root path related with this observer.
 	 *
@@ -23,6 +23,8 @@ import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 
+import java.util.Collections;
+
 /**
  * Define a media content observer used to check if something was changed on the
  * media storage.
@@ -59,15 +61,17 @@ public class MediaStorageContentObserver extends ContentObserver {
 	@Override
 	public void onChange(boolean selfChange, Uri uri) {
 		// super.onChange(selfChange);
-		checkAutoRenameTask();
+		checkAutoRenameTask(uri);
 	}
 
 	/**
 	 * Check auto rename task and launch it if necessary.
+	 *
+	 * @param uri The changed content URI, if available.
 	 */
-	private void checkAutoRenameTask() {
+	private void checkAutoRenameTask(Uri uri) {
 		if (mApplication != null) {
-			mApplication.launchAutoRenameTask(null, false, null, false);
+			mApplication.scheduleAutoRenameTask(uri != null ? Collections.singletonList(uri) : null, false);
 		}
 	}
 
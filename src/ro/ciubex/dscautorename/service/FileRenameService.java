@@ -28,6 +28,7 @@ import android.content.Intent;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.support.annotation.RequiresApi;
 
 import ro.ciubex.dscautorename.DSCApplication;
@@ -39,17 +40,21 @@ import ro.ciubex.dscautorename.task.FileRenameThread;
  *
  * @author Claudiu Ciobotariu
  */
-public class FileRenameService extends Service implements FileRenameThread.Listener {
+public class FileRenameService extends Service {
     private static final String TAG = FileRenameService.class.getName();
     public static final String APP_CHANNEL_ID = "ro.ciubex.dscautorename.service.FileRenameService";
     public static final String APP_CHANNEL_NAME = "DSC Auto Rename";
 
     private DSCApplication mApplication;
-    private FileRenameThread mFileRenameThread;
-    private boolean mStarted;
+    private int mActiveThreads;
+    private int mLastStartId;
     private NotificationManager mManager;
     private Notification mNotification;
     private static final int NOTIFICATION_ID = 84555;
+    private static final long PROGRESS_UPDATE_INTERVAL = 1000;
+    private Notification.Builder mProgressBuilder;
+    private long mProgressStartTime;
+    private long mLastProgressTime;
 
     /**
      * Called by the system when the service is first created.
@@ -60,7 +65,6 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
         Context appCtx = getApplicationContext();
         if (appCtx instanceof DSCApplication) {
             mApplication = (DSCApplication) appCtx;
-            mFileRenameThread = new FileRenameThread(mApplication, this, false, null);
             if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 createChannels();
             }
@@ -73,7 +77,7 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
     @RequiresApi(api = Build.VERSION_CODES.O)
     private void createChannels() {
         NotificationChannel androidChannel = new NotificationChannel(APP_CHANNEL_ID,
-                APP_CHANNEL_NAME, NotificationManager.IMPORTANCE_NONE);
+                APP_CHANNEL_NAME, NotificationManager.IMPORTANCE_LOW);
         androidChannel.enableLights(false);
         androidChannel.enableVibration(false);
         androidChannel.setLightColor(Color.BLUE);
@@ -87,7 +91,6 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
      */
     @Override
     public void onDestroy() {
-        mStarted = false;
         mApplication.resetCameraServiceInstanceCount();
         mApplication.logD(TAG, "Service destroyed!");
         super.onDestroy();
@@ -107,15 +110,15 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
      */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        if (!mStarted) {
-            mStarted = true;
-            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                startNotificationForAPI26();
-            }
-            startRenameThread();
-            mApplication.logD(TAG, "Service started!");
-
+        if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            startNotificationForAPI26();
         }
+        synchronized (this) {
+            mActiveThreads++;
+            mLastStartId = startId;
+        }
+        startRenameThread();
+        mApplication.logD(TAG, "Service started: " + startId);
         return super.onStartCommand(intent, flags, startId);
     }
 
@@ -157,10 +160,44 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
     }
 
     /**
-     * Start the rename thread.
+     * Start a rename thread for each start request. If a rename run is already active, the
+     * thread stops immediately, the coordinator allows only one active run.
      */
     private void startRenameThread() {
-        new Thread(mFileRenameThread).start();
+        FileRenameThread fileRenameThread = new FileRenameThread(mApplication, mThreadListener, false, false);
+        fileRenameThread.setMaxProgressUpdatesPerSecond((int) (1000 / PROGRESS_UPDATE_INTERVAL));
+        new Thread(fileRenameThread).start();
+    }
+
+    /**
+     * Show the rename progress on the foreground notification: the processed files, the total
+     * files and the throughput of the current pass. The notification is updated at most once per
+     * second, only the last position is always shown.
+     *
+     * @param position Number of processed files.
+     * @param max      Total number of files.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private synchronized void updateProgressNotification(int position, int max) {
+        long now = SystemClock.elapsedRealtime();
+        if (position == 0) {
+            mProgressStartTime = now;
+        } else if (position != max && now - mLastProgressTime < PROGRESS_UPDATE_INTERVAL) {
+            return;
+        }
+        mLastProgressTime = now;
+        long elapsed = now - mProgressStartTime;
+        float throughput = elapsed > 0 ? position * 1000f / elapsed : 0;
+        if (mProgressBuilder == null) {
+            mProgressBuilder = new Notification.Builder(getApplicationContext(), APP_CHANNEL_ID)
+                    .setContentTitle(getString(R.string.app_name))
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setOnlyAlertOnce(true)
+                    .setOngoing(true);
+        }
+        mProgressBuilder.setProgress(max, position, false)
+                .setContentText(getString(R.string.rename_service_progress, position, max, throughput));
+        getManager().notify(NOTIFICATION_ID, mProgressBuilder.build());
     }
 
     /**
@@ -175,26 +212,40 @@ public class FileRenameService extends Service implements FileRenameThread.Liste
         return null;
     }
 
-    @Override
-    public void onThreadStarted() {
-
-    }
+    /**
+     * Stop the service when all rename threads are finished.
+     */
+    private final FileRenameThread.Listener mThreadListener = new FileRenameThread.Listener() {
+        @Override
+        public void onThreadStarted() {
 
-    @Override
-    public void onThreadUpdate(int position, int max) {
+        }
 
-    }
+        @Override
+        public void onThreadUpdate(int position, int max) {
+            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                updateProgressNotification(position, max);
+            }
+        }
 
-    @Override
-    public void onThreadFinished(int count) {
-        mStarted = false;
-        mApplication.logD(TAG, "Service invoked onThreadFinished.");
-        mApplication.rescheduleMediaContentJobService();
-        stopSelf();
-    }
+        @Override
+        public void onThreadFinished(int count) {
+            int startId = -1;
+            synchronized (FileRenameService.this) {
+                mActiveThreads--;
+                if (mActiveThreads == 0) {
+                    startId = mLastStartId;
+                }
+            }
+            mApplication.logD(TAG, "Service invoked onThreadFinished.");
+            if (startId != -1) {
+                stopSelf(startId);
+            }
+        }
 
-    @Override
-    public boolean isFinishing() {
-        return false;
-    }
+        @Override
+        public boolean isFinishing() {
+            return false;
+        }
+    };
 }
@@ -25,8 +25,12 @@ import android.app.job.JobService;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import java.util.Arrays;
+
 import ro.ciubex.dscautorename.DSCApplication;
 import ro.ciubex.dscautorename.util.Utilities;
 
@@ -62,21 +66,31 @@ public class MediaContentJobService extends JobService {
     }
 
     @Override
-    public boolean onStartJob(JobParameters params) {
+    public boolean onStartJob(final JobParameters params) {
         Context appCtx = getApplicationContext();
         if (appCtx instanceof DSCApplication) {
-            DSCApplication application = (DSCApplication) appCtx;
-            MediaContentJobService.log(appCtx, Log.DEBUG, TAG, "onStartJob()");
+            final DSCApplication application = (DSCApplication) appCtx;
             Uri[] uris = params.getTriggeredContentUris();
-            if (Utilities.isEmpty(uris)) {
-                application.rescheduleMediaContentJobService();
-            } else {
-                if (!application.isRenameFileTaskRunning()) {
-                    application.launchAutoRenameTask(null, false, null, true);
-                }
+            String[] authorities = params.getTriggeredContentAuthorities();
+            MediaContentJobService.log(appCtx, Log.DEBUG, TAG, "onStartJob() uris: "
+                    + (uris != null ? uris.length : 0));
+            if (!Utilities.isEmpty(uris)) {
+                application.scheduleAutoRenameTask(Arrays.asList(uris), true);
+            } else if (!Utilities.isEmpty(authorities)) {
+                // too many changes were reported, the URIs are not provided
+                application.scheduleAutoRenameTask(null, true);
             }
+            // finish this job and register it again to observe the next content changes
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    jobFinished(params, false);
+                    application.rescheduleMediaContentJobService();
+                }
+            });
+            return true;
         }
-        return true;
+        return false;
     }
 
     @Override
@@ -0,0 +1,212 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import ro.ciubex.dscautorename.util.Utilities;
+
+/**
+ * Convert the binary log files written by the {@link BinaryLogEncoder} to the same text format
+ * used by the text log files.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class BinaryLogDecoder {
+	private static final long MAX_STRING_SIZE = 16 * 1024 * 1024;
+
+	private final List<String> mTags = new ArrayList<>();
+	private final List<String> mTemplates = new ArrayList<>();
+	private final SimpleDateFormat mFormatter = LogThread.createDateFormat();
+	private final StringBuilder mBuilder = new StringBuilder();
+	private final Date mDate = new Date();
+	private byte[] mBuffer = new byte[256];
+	private long mLastTime;
+
+	/**
+	 * Decode a binary log file. An incomplete last entry, written when the application was
+	 * stopped, is ignored.
+	 *
+	 * @param input  The binary log file.
+	 * @param output The text log file.
+	 * @return Number of decoded log entries.
+	 * @throws IOException If the files could not be read or written, or if the binary log
+	 *                     file is not valid.
+	 */
+	public int decode(File input, File output) throws IOException {
+		DataInputStream in = null;
+		Writer out = null;
+		int count = 0;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(input)));
+			out = new BufferedWriter(new FileWriter(output));
+			int record;
+			while ((record = in.read()) != -1) {
+				switch (record) {
+					case BinaryLogEncoder.RECORD_HEADER:
+						readHeader(in);
+						break;
+					case BinaryLogEncoder.RECORD_TAG:
+						readDefinition(in, mTags);
+						break;
+					case BinaryLogEncoder.RECORD_TEMPLATE:
+						readDefinition(in, mTemplates);
+						break;
+					case BinaryLogEncoder.RECORD_ENTRY:
+						out.append(readEntry(in)).append('\n');
+						count++;
+						break;
+					default:
+						throw new IOException("Unknown log record: " + record);
+				}
+			}
+		} catch (EOFException e) {
+			// the last entry is incomplete
+		} finally {
+			Utilities.doClose(in);
+			Utilities.doClose(out);
+		}
+		return count;
+	}
+
+	/**
+	 * Read a segment header, the interned tags and templates are reset.
+	 */
+	private void readHeader(DataInputStream in) throws IOException {
+		for (int i = 1; i < BinaryLogEncoder.MAGIC.length; i++) {
+			if (in.readByte() != BinaryLogEncoder.MAGIC[i]) {
+				throw new IOException("Invalid log header");
+			}
+		}
+		int version = in.readUnsignedByte();
+		if (version != BinaryLogEncoder.VERSION) {
+			throw new IOException("Unsupported log version: " + version);
+		}
+		mLastTime = readVarLong(in);
+		mTags.clear();
+		mTemplates.clear();
+	}
+
+	/**
+	 * Read an interned tag or template, the IDs are consecutive starting from 1.
+	 */
+	private void readDefinition(DataInputStream in, List<String> values) throws IOException {
+		long id = readVarLong(in);
+		String value = readString(in);
+		if (id != values.size() + 1) {
+			throw new IOException("Invalid log definition ID: " + id);
+		}
+		values.add(value);
+	}
+
+	/**
+	 * Read a log entry and format it as a text log line.
+	 */
+	private String readEntry(DataInputStream in) throws IOException {
+		int priority = in.readUnsignedByte();
+		mLastTime += unZigZag(readVarLong(in));
+		String tag = getDefinition(mTags, readVarLong(in));
+		long templateId = readVarLong(in);
+		String template = templateId == 0 ? readString(in) : getDefinition(mTemplates, templateId);
+		int argCount = (int) readVarLong(in);
+		Object[] args = argCount > 0 ? new Object[argCount] : null;
+		for (int i = 0; i < argCount; i++) {
+			args[i] = readArg(in);
+		}
+		String stackTrace = in.readUnsignedByte() != 0 ? readString(in) : null;
+		StringBuilder sb = mBuilder;
+		sb.setLength(0);
+		LogThread.appendMessage(sb, template, args);
+		String message = sb.toString();
+		sb.setLength(0);
+		mDate.setTime(mLastTime);
+		LogThread.appendLogLine(sb, mFormatter.format(mDate), priority, tag, message, stackTrace);
+		return sb.toString();
+	}
+
+	private Object readArg(DataInputStream in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch (type) {
+			case BinaryLogEncoder.ARG_NULL:
+				return null;
+			case BinaryLogEncoder.ARG_LONG:
+				return unZigZag(readVarLong(in));
+			case BinaryLogEncoder.ARG_FALSE:
+				return Boolean.FALSE;
+			case BinaryLogEncoder.ARG_TRUE:
+				return Boolean.TRUE;
+			case BinaryLogEncoder.ARG_FLOAT:
+				return Float.intBitsToFloat(in.readInt());
+			case BinaryLogEncoder.ARG_DOUBLE:
+				return Double.longBitsToDouble(in.readLong());
+			case BinaryLogEncoder.ARG_STRING:
+				return readString(in);
+			default:
+				throw new IOException("Unknown log argument type: " + type);
+		}
+	}
+
+	private static String getDefinition(List<String> values, long id) throws IOException {
+		if (id < 1 || id > values.size()) {
+			throw new IOException("Unknown log definition ID: " + id);
+		}
+		return values.get((int) (id - 1));
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		int b;
+		for (int shift = 0; shift < 64; shift += 7) {
+			b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid log variable length value");
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		long size = readVarLong(in);
+		if (size > MAX_STRING_SIZE) {
+			throw new IOException("Invalid log text size: " + size);
+		}
+		if (size > mBuffer.length) {
+			mBuffer = new byte[(int) size];
+		}
+		in.readFully(mBuffer, 0, (int) size);
+		return new String(mBuffer, 0, (int) size, "UTF-8");
+	}
+}
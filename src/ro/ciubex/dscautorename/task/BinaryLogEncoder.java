@@ -0,0 +1,269 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import ro.ciubex.dscautorename.util.RollingLogWriter;
+
+/**
+ * Encode the log entries in a compact binary format. Each log segment starts with a header
+ * containing the base time, then the timestamps are written as variable length differences.
+ * The tags and the message templates are written only once for each segment and then referred
+ * by their ID, the template arguments are written with their type. The log files are converted
+ * back to text by the {@link BinaryLogDecoder}.
+ * <p>
+ * This class is not thread safe, it should be used only by the log writer thread.
+ *
+ * @author Claudiu Ciobotariu
+ */
+class BinaryLogEncoder {
+	static final int VERSION = 1;
+	static final int RECORD_HEADER = 'D';
+	static final int RECORD_TAG = 1;
+	static final int RECORD_TEMPLATE = 2;
+	static final int RECORD_ENTRY = 3;
+	static final int ARG_NULL = 0;
+	static final int ARG_LONG = 1;
+	static final int ARG_FALSE = 2;
+	static final int ARG_TRUE = 3;
+	static final int ARG_FLOAT = 4;
+	static final int ARG_DOUBLE = 5;
+	static final int ARG_STRING = 6;
+	static final byte[] MAGIC = {'D', 'S', 'C', 'L'};
+	/**
+	 * The messages built without arguments are usually unique, only the templates are interned
+	 * and their number is limited for each segment.
+	 */
+	private static final int MAX_TEMPLATES = 1024;
+
+	private final RollingLogWriter mWriter;
+	private final Map<String, Integer> mTags = new HashMap<>();
+	private final Map<String, Integer> mTemplates = new HashMap<>();
+	private int mRollCount = -1;
+	private long mLastTime;
+	private byte[] mBuffer = new byte[1024];
+	private int mPosition;
+
+	BinaryLogEncoder(RollingLogWriter writer) {
+		mWriter = writer;
+	}
+
+	/**
+	 * Encode a log entry.
+	 *
+	 * @param priority     The log priority.
+	 * @param tag          The log tag.
+	 * @param milliseconds Log timestamp.
+	 * @param template     Log text, the {} placeholders are replaced by the arguments.
+	 * @param args         The template arguments, or null.
+	 * @param stackTrace   The stack trace of the logged exception, or null.
+	 * @throws IOException If the entry could not be written.
+	 */
+	void encode(int priority, String tag, long milliseconds, String template, Object[] args,
+				String stackTrace) throws IOException {
+		mPosition = 0;
+		if (mWriter.getRollCount() != mRollCount) {
+			startSegment(milliseconds);
+		}
+		Integer tagId = mTags.get(tag);
+		if (tagId == null) {
+			tagId = mTags.size() + 1;
+			mTags.put(tag, tagId);
+			writeByte(RECORD_TAG);
+			writeVarLong(tagId);
+			writeString(tag);
+		}
+		int argCount = args != null ? args.length : 0;
+		Integer templateId = argCount > 0 ? mTemplates.get(template) : null;
+		if (templateId == null && argCount > 0 && mTemplates.size() < MAX_TEMPLATES) {
+			templateId = mTemplates.size() + 1;
+			mTemplates.put(template, templateId);
+			writeByte(RECORD_TEMPLATE);
+			writeVarLong(templateId);
+			writeString(template);
+		}
+		writeByte(RECORD_ENTRY);
+		writeByte(priority);
+		writeVarLong(zigZag(milliseconds - mLastTime));
+		mLastTime = milliseconds;
+		writeVarLong(tagId);
+		if (templateId != null) {
+			writeVarLong(templateId);
+		} else {
+			writeVarLong(0);
+			writeString(template);
+		}
+		writeVarLong(argCount);
+		for (int i = 0; i < argCount; i++) {
+			writeArg(args[i]);
+		}
+		if (stackTrace != null) {
+			writeByte(1);
+			writeString(stackTrace);
+		} else {
+			writeByte(0);
+		}
+		mWriter.append(mBuffer, 0, mPosition);
+	}
+
+	/**
+	 * Write the segment header and reset the interned tags and templates.
+	 *
+	 * @param milliseconds The base time of the segment.
+	 */
+	private void startSegment(long milliseconds) {
+		mRollCount = mWriter.getRollCount();
+		mTags.clear();
+		mTemplates.clear();
+		for (byte b : MAGIC) {
+			writeByte(b);
+		}
+		writeByte(VERSION);
+		writeVarLong(milliseconds);
+		mLastTime = milliseconds;
+	}
+
+	/**
+	 * Write a template argument with its type.
+	 *
+	 * @param arg The argument.
+	 */
+	private void writeArg(Object arg) {
+		if (arg == null) {
+			writeByte(ARG_NULL);
+		} else if (arg instanceof Integer || arg instanceof Long
+				|| arg instanceof Short || arg instanceof Byte) {
+			writeByte(ARG_LONG);
+			writeVarLong(zigZag(((Number) arg).longValue()));
+		} else if (arg instanceof Boolean) {
+			writeByte((Boolean) arg ? ARG_TRUE : ARG_FALSE);
+		} else if (arg instanceof Float) {
+			writeByte(ARG_FLOAT);
+			writeFixed(Float.floatToIntBits((Float) arg), 4);
+		} else if (arg instanceof Double) {
+			writeByte(ARG_DOUBLE);
+			writeFixed(Double.doubleToLongBits((Double) arg), 8);
+		} else {
+			writeByte(ARG_STRING);
+			writeString(String.valueOf(arg));
+		}
+	}
+
+	static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private void ensureCapacity(int size) {
+		if (mPosition + size > mBuffer.length) {
+			byte[] buffer = new byte[Math.max(mBuffer.length * 2, mPosition + size)];
+			System.arraycopy(mBuffer, 0, buffer, 0, mPosition);
+			mBuffer = buffer;
+		}
+	}
+
+	private void writeByte(int value) {
+		ensureCapacity(1);
+		mBuffer[mPosition++] = (byte) value;
+	}
+
+	/**
+	 * Write a value in big endian order.
+	 *
+	 * @param value The value.
+	 * @param size  Number of bytes to be written.
+	 */
+	private void writeFixed(long value, int size) {
+		ensureCapacity(size);
+		for (int shift = (size - 1) * 8; shift >= 0; shift -= 8) {
+			mBuffer[mPosition++] = (byte) (value >>> shift);
+		}
+	}
+
+	/**
+	 * Write a not negative value using 7 bits for each byte, the high bit is set when more
+	 * bytes are following.
+	 *
+	 * @param value The value.
+	 */
+	private void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			mBuffer[mPosition++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		mBuffer[mPosition++] = (byte) value;
+	}
+
+	/**
+	 * Write a text as UTF-8 bytes, prefixed by the bytes count.
+	 *
+	 * @param text The text.
+	 */
+	private void writeString(String text) {
+		int len = text.length();
+		int size = 0;
+		char c;
+		for (int i = 0; i < len; i++) {
+			c = text.charAt(i);
+			if (c < 0x80) {
+				size++;
+			} else if (c < 0x800) {
+				size += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				size += 4;
+				i++;
+			} else {
+				size += 3;
+			}
+		}
+		writeVarLong(size);
+		ensureCapacity(size);
+		byte[] buffer = mBuffer;
+		int p = mPosition;
+		int codePoint;
+		for (int i = 0; i < len; i++) {
+			c = text.charAt(i);
+			if (c < 0x80) {
+				buffer[p++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[p++] = (byte) (0xC0 | (c >> 6));
+				buffer[p++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				codePoint = Character.toCodePoint(c, text.charAt(++i));
+				buffer[p++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[p++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				if (Character.isSurrogate(c)) {
+					c = '\uFFFD';
+				}
+				buffer[p++] = (byte) (0xE0 | (c >> 12));
+				buffer[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[p++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		mPosition = p;
+	}
+}
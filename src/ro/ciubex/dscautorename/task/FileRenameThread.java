@@ -20,13 +20,13 @@ package ro.ciubex.dscautorename.task;
 
 import android.annotation.TargetApi;
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.media.ExifInterface;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 
@@ -39,16 +39,41 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import ro.ciubex.dscautorename.DSCApplication;
 import ro.ciubex.dscautorename.model.FileNameModel;
 import ro.ciubex.dscautorename.model.FileRenameData;
 import ro.ciubex.dscautorename.model.MountVolume;
 import ro.ciubex.dscautorename.model.SelectedFolderModel;
+import ro.ciubex.dscautorename.util.DirectoryNameIndex;
+import ro.ciubex.dscautorename.util.DirectoryTreeIndex;
+import ro.ciubex.dscautorename.util.ExifDateTimeReader;
+import ro.ciubex.dscautorename.util.FileNameFormatter;
+import ro.ciubex.dscautorename.util.FileNameSequence;
+import ro.ciubex.dscautorename.util.FolderScanner;
+import ro.ciubex.dscautorename.util.LegacyFolderScanner;
+import ro.ciubex.dscautorename.util.MetadataDateCache;
+import ro.ciubex.dscautorename.util.Mp4CreationTimeReader;
+import ro.ciubex.dscautorename.util.NioFolderScanner;
+import ro.ciubex.dscautorename.util.RenameMetrics;
 import ro.ciubex.dscautorename.util.RenamePatternsUtilities;
 import ro.ciubex.dscautorename.util.Utilities;
 
@@ -60,6 +85,15 @@ import ro.ciubex.dscautorename.util.Utilities;
  */
 public class FileRenameThread implements Runnable {
     private final static String TAG = FileRenameThread.class.getName();
+    private static final String DIRECTORY_TREE_INDEX_FILE = "folders_index.bin";
+    private static final String METADATA_DATE_CACHE_FILE = "metadata_dates.bin";
+    private static final int METADATA_DATE_CACHE_SIZE = 5000;
+    /**
+     * Number of files of a folder for which the metadata is extracted ahead of the rename.
+     */
+    private static final int METADATA_PREFETCH_WINDOW = 8;
+    private static final int MAX_METADATA_THREADS = 4;
+    private static final int DEFAULT_PROGRESS_UPDATES_PER_SECOND = 10;
     private DSCApplication mApplication;
     private ContentResolver mContentResolver;
     private final WeakReference<Listener> mListener;
@@ -68,17 +102,30 @@ public class FileRenameThread implements Runnable {
     private boolean isGrantUriPermissionRequested;
     private FileNameModel[] mFileNameModels;
     private List<SelectedFolderModel> mSelectedFolders;
-    private int mPreviousFileModelId;
-    private String mPreviousFileNameModel;
-    private int mPreviousFileNameModelCount;
     private boolean mIsUriPermissionGranted;
     private RenamePatternsUtilities renamePatternsUtilities;
     private boolean mNoDelay;
+    private final boolean mUserInitiated;
     private List<Uri> mMediaStoreURIs;
-    private List<Uri> mFileUris;
-    private Object mMediaMetadataRetriever;
+    private MediaStoreBatchUpdater mMediaStoreBatchUpdater;
+    private MediaStoreScanMarks mScanMarks;
+    private DirectoryNameIndex mDirectoryNameIndex;
+    private DirectoryTreeIndex mDirectoryTreeIndex;
+    private MetadataDateCache mMetadataDateCache;
+    private ExecutorService mMetadataExecutor;
+    private final List<RetrieverHolder> mRetrieverHolders = new ArrayList<>();
+    private final ThreadLocal<RetrieverHolder> mRetrieverHolder = new ThreadLocal<>();
+    private Map<String, FileNameFormatter> mFileNameFormatters;
+    private int mRenameFileDateType;
+    private boolean mAppendOriginalName;
+    private String mFileNameSuffixFormat;
+    private RenameCoordinator mRenameCoordinator;
+    private final RenameMetrics mRenameMetrics;
     private Set<String> mFilesToUpdate;
     private Set<Uri> mBroadcastingMessages;
+    private final AtomicInteger mProcessedFiles = new AtomicInteger();
+    private final AtomicLong mLastProgressTime = new AtomicLong();
+    private long mProgressInterval = 1000 / DEFAULT_PROGRESS_UPDATES_PER_SECOND;
 
     public interface Listener {
         void onThreadStarted();
@@ -90,14 +137,26 @@ public class FileRenameThread implements Runnable {
         boolean isFinishing();
     }
 
-    public FileRenameThread(DSCApplication application, Listener listener, boolean noDelay, List<Uri> fileUris) {
+    /**
+     * Create the rename thread.
+     *
+     * @param application   The application.
+     * @param listener      The listener of the rename progress.
+     * @param noDelay       True if the rename should be started without delay.
+     * @param userInitiated True if the rename was started by the user, in this case the media
+     *                      store is fully scanned.
+     */
+    public FileRenameThread(DSCApplication application, Listener listener, boolean noDelay,
+                            boolean userInitiated) {
         this.mApplication = application;
         this.mListener = new WeakReference<>(listener);
         mListFiles = new ArrayList<>();
-        mFilesToUpdate = new TreeSet<>();
-        mBroadcastingMessages = new TreeSet<>();
+        mFilesToUpdate = Collections.synchronizedSet(new TreeSet<String>());
+        mBroadcastingMessages = Collections.synchronizedSet(new TreeSet<Uri>());
         mNoDelay = noDelay;
-        mFileUris = fileUris;
+        mUserInitiated = userInitiated;
+        mRenameCoordinator = application.getRenameCoordinator();
+        mRenameMetrics = application.getRenameMetrics();
     }
 
     /**
@@ -111,15 +170,33 @@ public class FileRenameThread implements Runnable {
     }
 
     /**
-     * Update the listener about current position and maximum items.
+     * Set the maximum number of progress updates delivered to the listener each second.
+     *
+     * @param updatesPerSecond The maximum number of progress updates per second.
+     */
+    public void setMaxProgressUpdatesPerSecond(int updatesPerSecond) {
+        mProgressInterval = updatesPerSecond > 0 ? 1000 / updatesPerSecond : 0;
+    }
+
+    /**
+     * Update the listener about current position and maximum items. The updates are throttled,
+     * only the first and the last positions are always delivered.
      *
      * @param position Current position.
      * @param max      Maximum items.
      */
     private void onProgressUpdate(int position, int max) {
+        long now = SystemClock.elapsedRealtime();
+        if (position != 0 && position != max) {
+            long last = mLastProgressTime.get();
+            if (now - last < mProgressInterval || !mLastProgressTime.compareAndSet(last, now)) {
+                return;
+            }
+        } else {
+            mLastProgressTime.set(now);
+        }
         Listener listener = mListener.get();
         if (listener != null && !listener.isFinishing()) {
-            mApplication.logD(TAG, "progress position: " + position);
             listener.onThreadUpdate(position, max);
         }
     }
@@ -137,7 +214,6 @@ public class FileRenameThread implements Runnable {
             }
         }
         mListFiles.clear();
-        mApplication.setRenameFileTaskCanceled(false);
     }
 
     /**
@@ -146,10 +222,34 @@ public class FileRenameThread implements Runnable {
     @Override
     public void run() {
         onPreExecute();
+        Future<Integer> completion = mRenameCoordinator.onRunStarted();
+        if (completion == null) {
+            mApplication.logD(TAG, "There is no rename run to start.");
+            onPostExecute(0);
+            return;
+        }
+        int total = 0;
+        long startTime = RenameMetrics.start();
+        try {
+            total = runRename();
+        } finally {
+            mRenameMetrics.record(RenameMetrics.STAGE_RUN, startTime);
+            mRenameMetrics.increment(RenameMetrics.COUNTER_RUNS);
+            mRenameCoordinator.finishRun(completion, total);
+        }
+        mApplication.logD(TAG, "Finished run()");
+        onPostExecute(total);
+    }
+
+    /**
+     * Rename the files of all passes of the current run.
+     *
+     * @return Number of renamed files.
+     */
+    private int runRename() {
         mContentResolver = mApplication.getContentResolver();
         int total = 0;
         if (mContentResolver != null) {
-            mApplication.setRenameFileTaskRunning(true);
             mApplication.updateMountedVolumes();
             mApplication.updateSelectedFolders();
             mFoldersScanning = mApplication.getSelectedFolders();
@@ -157,20 +257,41 @@ public class FileRenameThread implements Runnable {
             renamePatternsUtilities = new RenamePatternsUtilities(mApplication);
             renamePatternsUtilities.buildPatterns();
             populateMediaStoreURI();
+            mMediaStoreBatchUpdater = new MediaStoreBatchUpdater(mApplication, mContentResolver, mMediaStoreURIs);
+            mFileNameFormatters = new ConcurrentHashMap<>();
+            mRenameFileDateType = mApplication.getRenameFileDateType();
+            mAppendOriginalName = mApplication.isAppendOriginalNameEnabled();
+            mFileNameSuffixFormat = mApplication.getFileNameSuffixFormat();
+            if (mRenameFileDateType == 2) {
+                mMetadataDateCache = new MetadataDateCache(new File(mApplication.getCacheDir(),
+                        METADATA_DATE_CACHE_FILE), METADATA_DATE_CACHE_SIZE);
+                mMetadataDateCache.load();
+            }
             if (!mApplication.isRenameFileTaskCanceled()) {
                 doGrantUriPermission();
+            }
+            try {
                 total = runLoopRename();
+            } finally {
+                // stop the commit thread and write the queued updates even if a pass failed
+                mMediaStoreBatchUpdater.close();
+            }
+            if (mMetadataDateCache != null) {
+                mMetadataDateCache.save();
             }
-            mApplication.setRenameFileTaskRunning(false);
+            long startTime;
             if (!mFilesToUpdate.isEmpty() && mApplication.isInvokeMediaScannerEnabled()) {
+                startTime = RenameMetrics.start();
                 invokeMediaScanner();
+                mRenameMetrics.record(RenameMetrics.STAGE_MEDIA_SCANNER, startTime);
             }
             if (!mBroadcastingMessages.isEmpty()) {
+                startTime = RenameMetrics.start();
                 doBroadcastingMessages();
+                mRenameMetrics.record(RenameMetrics.STAGE_BROADCAST, startTime);
             }
         }
-        mApplication.logD(TAG, "Finished run()");
-        onPostExecute(total);
+        return total;
     }
 
     /**
@@ -181,43 +302,232 @@ public class FileRenameThread implements Runnable {
     private int runLoopRename() {
         int total = 0;
         int negatives = 0;
-        while (mApplication.isRenameFileRequested() && !mApplication.isRenameFileTaskCanceled()) {
-            mApplication.setRenameFileRequested(false);
+        RenameCoordinator.RenamePass pass;
+        while ((pass = mRenameCoordinator.nextPass()) != null) {
             int count = 0;
             if (!mNoDelay) {
                 executeDelay();
             }
-            populateAllListFiles();
+            long startTime = RenameMetrics.start();
+            populateAllListFiles(pass.getFileUris());
+            mRenameMetrics.record(RenameMetrics.STAGE_SCAN, startTime);
+            mRenameMetrics.add(RenameMetrics.COUNTER_FILES_SCANNED, mListFiles.size());
             if (!mListFiles.isEmpty()
                     && !mApplication.isRenameFileTaskCanceled()) {
-                mPreviousFileNameModelCount = 0;
-                mPreviousFileModelId = -1;
+                List<List<FolderRenameTask>> lanes = prepareRenameLanes();
                 int max = mListFiles.size();
-                int i = 0;
-                onProgressUpdate(i++, max);
-                for (FileRenameData data : mListFiles) {
-                    if (renameCurrentFile(data)) {
-                        count++;
-                    } else {
-                        negatives--;
-                    }
-                    onProgressUpdate(i++, max);
-                    if (!mNoDelay) {
-                        executeFileRenameDelay();
-                    }
-                    if (mApplication.isRenameFileTaskCanceled()) {
-                        break;
+                mDirectoryNameIndex = new DirectoryNameIndex();
+                mProcessedFiles.set(0);
+                onProgressUpdate(0, max);
+                startMetadataStage();
+                try {
+                    executeRenameLanes(lanes, max);
+                } finally {
+                    stopMetadataStage();
+                }
+                mMediaStoreBatchUpdater.flush();
+                int failed = 0;
+                for (List<FolderRenameTask> lane : lanes) {
+                    for (FolderRenameTask task : lane) {
+                        count += task.mRenamed;
+                        failed += task.mFailed;
                     }
                 }
+                negatives -= failed;
+                mRenameMetrics.add(RenameMetrics.COUNTER_FILES_RENAMED, count);
+                mRenameMetrics.add(RenameMetrics.COUNTER_FILES_FAILED, failed);
                 if (count > 0) {
                     total += count;
                     mApplication.increaseFileRenameCount(count);
                 }
             }
+            if (mScanMarks != null) {
+                mScanMarks.save();
+            }
         }
         return total + negatives;
     }
 
+    /**
+     * Partition the list of files by the target folder. The files from a folder are always renamed
+     * by the same worker, in the original order, so the file name suffix counters remain correct.
+     * All folders located on a removable volume are grouped on a single lane, to not overload
+     * slow cards with concurrent writes.
+     *
+     * @return The list of lanes, each lane is processed sequentially by one worker.
+     */
+    private List<List<FolderRenameTask>> prepareRenameLanes() {
+        Map<String, FolderRenameTask> tasks = new LinkedHashMap<>();
+        FolderRenameTask task;
+        String folderPath;
+        for (FileRenameData data : mListFiles) {
+            folderPath = getTargetFolderPath(data);
+            task = tasks.get(folderPath);
+            if (task == null) {
+                task = new FolderRenameTask(folderPath);
+                tasks.put(folderPath, task);
+            }
+            task.mFiles.add(data);
+        }
+        List<List<FolderRenameTask>> lanes = new ArrayList<>();
+        List<FolderRenameTask> slowLane = null;
+        for (FolderRenameTask folderTask : tasks.values()) {
+            if (isSlowVolume(folderTask.mFolderPath)) {
+                if (slowLane == null) {
+                    slowLane = new ArrayList<>();
+                    lanes.add(slowLane);
+                }
+                slowLane.add(folderTask);
+            } else {
+                lanes.add(Collections.singletonList(folderTask));
+            }
+        }
+        return lanes;
+    }
+
+    /**
+     * Obtain the folder path where the file will be placed after renaming.
+     *
+     * @param data File rename data info.
+     * @return The target folder path.
+     */
+    private String getTargetFolderPath(FileRenameData data) {
+        if (!Utilities.isEmpty(data.getMoveToFolderPath())) {
+            return data.getMoveToFolderPath();
+        }
+        String parent = new File(data.getData()).getParent();
+        return parent != null ? parent : "";
+    }
+
+    /**
+     * Check if the folder is located on a removable, not emulated, volume.
+     *
+     * @param folderPath The folder path to check.
+     * @return True if the folder is located on a slow volume.
+     */
+    private boolean isSlowVolume(String folderPath) {
+        if (mApplication.getMountedVolumes() != null) {
+            MountVolume volume = mApplication.getMountVolumeByPath(folderPath);
+            return volume != null && volume.isRemovable() && !volume.isEmulated();
+        }
+        return false;
+    }
+
+    /**
+     * Execute the rename lanes using the configured number of worker threads. If only one worker
+     * is used or a delay between files is requested, the lanes are processed on the current thread.
+     *
+     * @param lanes The lanes to process.
+     * @param max   Total number of files, used for progress updates.
+     */
+    private void executeRenameLanes(List<List<FolderRenameTask>> lanes, final int max) {
+        int threads = Math.min(mApplication.getRenameWorkerThreads(), lanes.size());
+        if (threads < 2 || mApplication.getRenameFileDelay() > 0) {
+            for (List<FolderRenameTask> lane : lanes) {
+                runRenameLane(lane, max);
+            }
+            return;
+        }
+        mApplication.logD(TAG, "Rename " + lanes.size() + " lanes using " + threads + " workers.");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (final List<FolderRenameTask> lane : lanes) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runRenameLane(lane, max);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                mApplication.logD(TAG, "Waiting for rename workers: {}/{}", mProcessedFiles.get(), max);
+            }
+        } catch (InterruptedException e) {
+            mApplication.logE(TAG, "InterruptedException", e);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Rename sequentially all files from a lane.
+     *
+     * @param lane The folder tasks of the lane.
+     * @param max  Total number of files, used for progress updates.
+     */
+    private void runRenameLane(List<FolderRenameTask> lane, int max) {
+        for (FolderRenameTask task : lane) {
+            if (mApplication.isRenameFileTaskCanceled()) {
+                break;
+            }
+            task.renameFiles(max);
+        }
+    }
+
+    /**
+     * Start the metadata extraction stage, used only when the file date is read from the file
+     * metadata. The metadata of the next files is extracted while the current file is renamed.
+     */
+    private void startMetadataStage() {
+        if (mRenameFileDateType == 2) {
+            int threads = Math.min(MAX_METADATA_THREADS,
+                    Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+            mMetadataExecutor = Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * Stop the metadata extraction stage and release the media metadata retrievers. The not
+     * started extractions were already cancelled by the folder tasks, the running extractions are
+     * not interrupted, to not cache a wrong date.
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private void stopMetadataStage() {
+        if (mMetadataExecutor != null) {
+            mMetadataExecutor.shutdown();
+            try {
+                mMetadataExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                mApplication.logE(TAG, "InterruptedException", e);
+            }
+            mMetadataExecutor = null;
+        }
+        synchronized (mRetrieverHolders) {
+            for (RetrieverHolder holder : mRetrieverHolders) {
+                if (holder.mRetriever instanceof MediaMetadataRetriever) {
+                    ((MediaMetadataRetriever) holder.mRetriever).release();
+                }
+                holder.mRetriever = null;
+            }
+        }
+    }
+
+    /**
+     * Queue the metadata extraction of a file.
+     *
+     * @param data The file to be renamed.
+     * @return The future extracted date, or null if the metadata stage is not used.
+     */
+    private Future<Long> submitMetadataExtraction(final FileRenameData data) {
+        ExecutorService executor = mMetadataExecutor;
+        if (executor == null || data.getData() == null) {
+            return null;
+        }
+        try {
+            return executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    if (mApplication.isRenameFileTaskCanceled()) {
+                        return null;
+                    }
+                    return getDateFromExif(data, new File(data.getData()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
     /**
      * Populate all needed media store URI.
      */
@@ -295,9 +605,10 @@ public class FileRenameThread implements Runnable {
     /**
      * Rename current file.
      *
+     * @param task            The folder task which is renaming the file.
      * @param currentFileData Current file data used by the rename process.
      */
-    private boolean renameCurrentFile(FileRenameData currentFileData) {
+    private boolean renameCurrentFile(FolderRenameTask task, FileRenameData currentFileData) {
         String currentFileName = currentFileData.getData();
         boolean skipFile;
         boolean renamed = false;
@@ -310,12 +621,12 @@ public class FileRenameThread implements Runnable {
                 }
                 if (!skipFile) {
                     if (canRenameFile(currentFile)) {
-                        renamed = mainRenameFile(currentFileData, currentFile, currentFileName);
+                        renamed = mainRenameFile(task, currentFileData, currentFile, currentFileName);
                     } else {
                         mApplication.logE(TAG, "File can not be renamed: " + currentFileName);
                     }
                 } else {
-                    mApplication.logD(TAG, "Skip rename file: " + currentFileName);
+                    mApplication.logD(TAG, "Skip rename file: {}", currentFileName);
                 }
             } else {
                 mApplication.logE(TAG, "The file: " + currentFileName + " does not exist.");
@@ -394,36 +705,47 @@ public class FileRenameThread implements Runnable {
     /**
      * Rename the old file with provided new name.
      *
+     * @param task        The folder task which is renaming the file.
      * @param data        Original data information.
      * @param oldFile     The old file to be renamed.
      * @param oldFileName The old file name.
      */
-    private boolean mainRenameFile(FileRenameData data, final File oldFile, String oldFileName) {
+    private boolean mainRenameFile(FolderRenameTask task, FileRenameData data, final File oldFile, String oldFileName) {
         boolean success = false;
         String newFileName;
         File newFile;
         File parentFolder;
         boolean exist;
+        if (!Utilities.isEmpty(data.getMoveToFolderPath())) {
+            parentFolder = new File(data.getMoveToFolderPath());
+        } else {
+            parentFolder = oldFile.getParentFile();
+        }
+        String name = oldFile.getName();
+        String extension = "." + getFileExtension(name);
+        String title = name.substring(0, name.lastIndexOf("."));
+        String baseFileName = getBaseFileName(task, data, oldFile);
         do {
-            newFileName = getNewFileName(data, oldFile);
-            if (!Utilities.isEmpty(data.getMoveToFolderPath())) {
-                parentFolder = new File(data.getMoveToFolderPath());
-            } else {
-                parentFolder = oldFile.getParentFile();
-            }
+            newFileName = getNewFileName(task, data, baseFileName, title, extension);
             newFile = new File(parentFolder, newFileName);
-            exist = newFile.exists();
-        } while (exist && mPreviousFileNameModelCount < 1000);
+            exist = mDirectoryNameIndex.contains(parentFolder, newFileName);
+            if (!exist && newFile.exists()) {
+                mDirectoryNameIndex.add(parentFolder, newFileName);
+                exist = true;
+            }
+        } while (exist && task.mNameSequence.getCount() < 1000);
         if (!exist) {
             data.setFullPath(newFile.getAbsolutePath());
             data.setFileName(newFile.getName());
             success = renameFileUseApiLevel(data, oldFile, newFile);
             if (success) {
+                mDirectoryNameIndex.onRenamed(oldFile, newFile);
+                onMetadataFileRenamed(oldFile, newFile);
                 updateFileRecord(data.getUri(), data.getId(),
                         data.getFullPath(), oldFileName, data.getFileTitle(),
                         data.getFileName());
                 data.setParentFolder(newFile.getParentFile());
-                renameZeroFile(data);
+                renameZeroFile(task, data);
             } else {
                 mApplication.logE(TAG, "Unable to rename: " + getLogFileData(data));
             }
@@ -437,18 +759,21 @@ public class FileRenameThread implements Runnable {
     /**
      * Rename the zero file if the counter is needed.
      *
+     * @param task The folder task which is renaming the file.
      * @param data All rename data.
      */
-    private void renameZeroFile(FileRenameData data) {
+    private void renameZeroFile(FolderRenameTask task, FileRenameData data) {
         File newFile, zeroFile;
-        if (mPreviousFileNameModelCount == 1) {
+        if (task.mNameSequence.getCount() == 1) {
             zeroFile = new File(data.getParentFolder(), data.getPreviousFileName());
             newFile = new File(data.getParentFolder(), data.getFileNameZero());
             if (renameFileUseApiLevel(data, zeroFile, newFile)) {
+                mDirectoryNameIndex.onRenamed(zeroFile, newFile);
+                onMetadataFileRenamed(zeroFile, newFile);
                 mApplication.logD(TAG, "ZERO File renamed from "
                         + zeroFile.getName() + " to " + newFile.getName());
                 updateFileRecord(data.getUri(),
-                        mPreviousFileModelId,
+                        task.mPreviousFileModelId,
                         newFile.getAbsolutePath(),
                         zeroFile.getAbsolutePath(),
                         data.getFileTitleZero(),
@@ -458,7 +783,8 @@ public class FileRenameThread implements Runnable {
     }
 
     /**
-     * Method used to call proper rename file method base on Android API version.
+     * Method used to call proper rename file method base on Android API version, the rename time
+     * is recorded in the metrics.
      *
      * @param data    File rename data info.
      * @param oldFile Old file reference.
@@ -466,6 +792,23 @@ public class FileRenameThread implements Runnable {
      * @return True, if the rename process succeeded.
      */
     private boolean renameFileUseApiLevel(FileRenameData data, File oldFile, File newFile) {
+        long startTime = RenameMetrics.start();
+        try {
+            return renameFileOnApiLevel(data, oldFile, newFile);
+        } finally {
+            mRenameMetrics.record(RenameMetrics.STAGE_RENAME, startTime);
+        }
+    }
+
+    /**
+     * Rename the file using the method of the current Android API version.
+     *
+     * @param data    File rename data info.
+     * @param oldFile Old file reference.
+     * @param newFile New file reference.
+     * @return True, if the rename process succeeded.
+     */
+    private boolean renameFileOnApiLevel(FileRenameData data, File oldFile, File newFile) {
         int sdkInt = mApplication.getSdkInt();
         if (sdkInt < Build.VERSION_CODES.KITKAT) {
             return renameFileApiLevelPriorKitKat(data, oldFile, newFile);
@@ -548,11 +891,11 @@ public class FileRenameThread implements Runnable {
                         newFile.setLastModified(data.getDateAdded());
                     }
                 } else {
-                    mApplication.logD(TAG, "Can not be renamed using new API, rename using old Java File API: " + fullFilePath);
+                    mApplication.logD(TAG, "Can not be renamed using new API, rename using old Java File API: {}", fullFilePath);
                     result = renameFileApiLevelPriorKitKat(data, oldFile, newFile);
                 }
             } else {
-                mApplication.logD(TAG, "Uri permission not granted, rename using old Java File API: " + fullFilePath);
+                mApplication.logD(TAG, "Uri permission not granted, rename using old Java File API: {}", fullFilePath);
                 result = renameFileApiLevelPriorKitKat(data, oldFile, newFile);
             }
         } catch (Exception e) {
@@ -574,7 +917,7 @@ public class FileRenameThread implements Runnable {
         String path1 = parent1.getAbsolutePath();
         String path2 = parent2.getAbsolutePath();
         boolean result = !path2.equals(path1);
-        mApplication.logD(TAG, "Check mustMoveFile(" + oldFile + ", " + newFile + "): " + result);
+        mApplication.logD(TAG, "Check mustMoveFile({}, {}): {}", oldFile, newFile, result);
         return result;
     }
 
@@ -713,56 +1056,72 @@ public class FileRenameThread implements Runnable {
     }
 
     /**
-     * Rename the file provided as parameter.
+     * Compute the file name based on the file date, without the counter suffix.
      *
+     * @param task The folder task which is renaming the file.
      * @param data Original data information.
      * @param file The file to be renamed.
+     * @return The formatted file date.
      */
-    private String getNewFileName(FileRenameData data, File file) {
-        String oldFileName = file.getName();
-        String suffix;
-        int idx = oldFileName.lastIndexOf(".");
-        String extension = "." + getFileExtension(oldFileName);
-        oldFileName = oldFileName.substring(0, idx);
-        String fileNameZero;
+    private String getBaseFileName(FolderRenameTask task, FileRenameData data, File file) {
         long milliseconds = 0;
-        switch (mApplication.getRenameFileDateType()) {
+        switch (mRenameFileDateType) {
             case 1:
                 milliseconds = getDateAdded(data, file);
                 break;
             case 2:
-                milliseconds = getDateFromExif(data, file);
+                milliseconds = task.takeFileDate(data, file);
                 break;
             default:
                 milliseconds = file.lastModified();
         }
         data.setDateAdded(milliseconds);
-        String newFileName = mApplication.getFileNameFormatted(data.getFileNamePatternAfter(), new Date(milliseconds));
-        if (newFileName.equals(mPreviousFileNameModel)) {
-            data.setPreviousFileName(newFileName + extension);
-            mPreviousFileNameModelCount++;
+        StringBuilder sb = task.mNameBuilder;
+        sb.setLength(0);
+        getFileNameFormatter(data.getFileNamePatternAfter()).format(milliseconds, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Build the new file name, adding the counter suffix if the previous file had the same
+     * base name.
+     *
+     * @param task        The folder task which is renaming the file.
+     * @param data        Original data information.
+     * @param newFileName The base file name, formatted from the file date.
+     * @param oldFileName The original file name, without extension.
+     * @param extension   The file extension, including the dot.
+     * @return The new file name.
+     */
+    private String getNewFileName(FolderRenameTask task, FileRenameData data, String newFileName,
+                                  String oldFileName, String extension) {
+        FileNameSequence sequence = task.mNameSequence;
+        String fileName = sequence.next(newFileName, oldFileName, extension);
+        if (sequence.getCount() > 0) {
+            data.setPreviousFileName(sequence.getPreviousName());
+            data.setFileTitleZero(sequence.getTitleZero());
+            data.setFileNameZero(sequence.getNameZero());
         } else {
-            mPreviousFileNameModel = newFileName;
-            mPreviousFileNameModelCount = 0;
-            mPreviousFileModelId = data.getId();
-        }
-        if (mPreviousFileNameModelCount > 0) {
-            fileNameZero = newFileName + mApplication.getFormattedFileNameSuffix(0);
-            suffix = mApplication.getFormattedFileNameSuffix(mPreviousFileNameModelCount);
-            if (mApplication.isAppendOriginalNameEnabled()) {
-                fileNameZero += "_" + oldFileName;
-            }
-            newFileName += suffix;
-            data.setFileTitleZero(fileNameZero);
-            fileNameZero += extension;
-            data.setFileNameZero(fileNameZero);
+            task.mPreviousFileModelId = data.getId();
         }
-        if (mApplication.isAppendOriginalNameEnabled()) {
-            newFileName += "_" + oldFileName;
+        data.setFileTitle(sequence.getTitle());
+        return fileName;
+    }
+
+    /**
+     * Obtain the compiled formatter for a file name pattern, the formatters are compiled once
+     * for each rename run.
+     *
+     * @param fileNamePattern The file name pattern.
+     * @return The file name formatter.
+     */
+    private FileNameFormatter getFileNameFormatter(String fileNamePattern) {
+        FileNameFormatter formatter = mFileNameFormatters.get(fileNamePattern);
+        if (formatter == null) {
+            formatter = mApplication.getFileNameFormatter(fileNamePattern);
+            mFileNameFormatters.put(fileNamePattern, formatter);
         }
-        data.setFileTitle(newFileName);
-        newFileName += extension;
-        return newFileName;
+        return formatter;
     }
 
     /**
@@ -816,10 +1175,17 @@ public class FileRenameThread implements Runnable {
         String dateTimeString = null;
         long milliseconds = -1;
         String fileName = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        long cached = mMetadataDateCache.get(fileName, size, lastModified);
+        if (cached != MetadataDateCache.NOT_CACHED) {
+            mRenameMetrics.increment(RenameMetrics.COUNTER_METADATA_CACHE_HITS);
+            return cached != -1 ? cached : getDateAdded(data, file);
+        }
+        long startTime = RenameMetrics.start();
         try {
             if (isImageFile(fileName)) {
-                ExifInterface exifInterface = new ExifInterface(fileName);
-                dateTimeString = exifInterface.getAttribute(ExifInterface.TAG_DATETIME);
+                dateTimeString = getExifDateTime(file);
                 if (dateTimeString != null) {
                     Date datetime = Utilities.parseExifDateTimeString(dateTimeString);
                     if (datetime != null) {
@@ -827,8 +1193,9 @@ public class FileRenameThread implements Runnable {
                     }
                 }
             } else {
-                milliseconds = extractMetadataDate(fileName);
+                milliseconds = getVideoDate(file);
             }
+            mMetadataDateCache.put(fileName, size, lastModified, milliseconds);
         } catch (IOException e) {
             mApplication.logE(TAG, "IOException: " + e.getMessage() + " file:"
                     + fileName, e);
@@ -836,12 +1203,62 @@ public class FileRenameThread implements Runnable {
             mApplication.logE(TAG, "Exception: " + e.getMessage() + " file: "
                     + fileName + " dateTimeString: " + dateTimeString, e);
         }
+        mRenameMetrics.record(RenameMetrics.STAGE_METADATA, startTime);
         if (milliseconds == -1) {
             milliseconds = getDateAdded(data, file);
         }
         return milliseconds;
     }
 
+    /**
+     * Read the EXIF date and time from the APP1 segment of the file, if the segment could not be
+     * parsed then the ExifInterface is used.
+     *
+     * @param file The image file.
+     * @return The EXIF date and time string or null.
+     * @throws IOException If the ExifInterface could not read the file.
+     */
+    private String getExifDateTime(File file) throws IOException {
+        try {
+            return ExifDateTimeReader.readDateTime(file);
+        } catch (IOException e) {
+            mApplication.logD(TAG, "ExifDateTimeReader({}): {}", file, e.getMessage());
+        }
+        ExifInterface exifInterface = new ExifInterface(file.getAbsolutePath());
+        return exifInterface.getAttribute(ExifInterface.TAG_DATETIME);
+    }
+
+    /**
+     * Keep the cached metadata date of a renamed file, the renamed file has the same content.
+     * The new last modified time is read from the disk, the rename sets it to the file date.
+     *
+     * @param oldFile The old file.
+     * @param newFile The new file.
+     */
+    private void onMetadataFileRenamed(File oldFile, File newFile) {
+        if (mMetadataDateCache != null) {
+            mMetadataDateCache.onRenamed(oldFile.getAbsolutePath(), newFile.getAbsolutePath(),
+                    newFile.lastModified());
+        }
+    }
+
+    /**
+     * Read the video creation time from the MP4 movie header, if the file could not be parsed
+     * then the MediaMetadataRetriever is used.
+     *
+     * @param file The video file.
+     * @return The video creation time or -1.
+     */
+    private long getVideoDate(File file) {
+        try {
+            long creationTime = Mp4CreationTimeReader.readCreationTime(file);
+            return creationTime != -1 ? Utilities.getMetadataDate(creationTime).getTime() : -1;
+        } catch (IOException e) {
+            mApplication.logD(TAG, "Mp4CreationTimeReader({}): {}", file, e.getMessage());
+        }
+        return extractMetadataDate(file.getAbsolutePath());
+    }
+
     /**
      * Extract the file original timestamp or -1.
      *
@@ -859,15 +1276,16 @@ public class FileRenameThread implements Runnable {
             if (fileDescriptor == null) {
                 return -1;
             }
-            if (mMediaMetadataRetriever instanceof MediaMetadataRetriever) {
-                retriever = (MediaMetadataRetriever) mMediaMetadataRetriever;
+            RetrieverHolder holder = getRetrieverHolder();
+            if (holder.mRetriever instanceof MediaMetadataRetriever) {
+                retriever = (MediaMetadataRetriever) holder.mRetriever;
             } else {
                 retriever = new MediaMetadataRetriever();
-                mMediaMetadataRetriever = retriever;
+                holder.mRetriever = retriever;
             }
             retriever.setDataSource(fileDescriptor);
             String date = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DATE);
-            mApplication.logD(TAG, "METADATA_DATE: " + date + " fileName: " + fileName);
+            mApplication.logD(TAG, "METADATA_DATE: {} fileName: {}", date, fileName);
             Date datetime = Utilities.parseMetadataDateTimeString(date);
             return datetime != null ? datetime.getTime() : -1;
         } catch (RuntimeException e) {
@@ -885,6 +1303,24 @@ public class FileRenameThread implements Runnable {
         return -1;
     }
 
+    /**
+     * Obtain the media metadata retriever holder of the current thread, the retrievers are not
+     * thread safe and are released at the end of each rename pass.
+     *
+     * @return The retriever holder of the current thread.
+     */
+    private RetrieverHolder getRetrieverHolder() {
+        RetrieverHolder holder = mRetrieverHolder.get();
+        if (holder == null) {
+            holder = new RetrieverHolder();
+            mRetrieverHolder.set(holder);
+            synchronized (mRetrieverHolders) {
+                mRetrieverHolders.add(holder);
+            }
+        }
+        return holder;
+    }
+
     /**
      * Obtain and calculate in milliseconds the date and time when the file was
      * added to media storage.
@@ -925,11 +1361,13 @@ public class FileRenameThread implements Runnable {
 
     /**
      * Populate the list files accordingly with user choice.
+     *
+     * @param fileUris The files of the current pass, or null for a full scan.
      */
-    private void populateAllListFiles() {
+    private void populateAllListFiles(List<Uri> fileUris) {
         mListFiles.clear();
-        if (mFileUris != null && !mFileUris.isEmpty()) {
-            scanSelectedFiles();
+        if (fileUris != null && !fileUris.isEmpty()) {
+            scanSelectedFiles(fileUris);
         } else if (mApplication.isEnabledScanForFiles()) {
             scanForFiles();
         } else {
@@ -944,55 +1382,74 @@ public class FileRenameThread implements Runnable {
     private void scanForFiles() {
         mApplication.logD(TAG, "Scanning for the files, it is not used the media store.");
         if (mFoldersScanning.length > 0) {
+            DirectoryTreeIndex treeIndex = getDirectoryTreeIndex();
+            FolderScanner scanner = mApplication.getSdkInt() >= Build.VERSION_CODES.O ?
+                    new NioFolderScanner() : new LegacyFolderScanner();
             File folder;
             for (SelectedFolderModel selectedFolder : mFoldersScanning) {
                 folder = new File(selectedFolder.getFullPath());
                 if (folder.exists() && folder.isDirectory()) {
-                    recursiveFolderScan(folder.listFiles());
+                    recursiveFolderScan(folder, scanner.getLastModified(folder), scanner, treeIndex);
                 }
             }
+            treeIndex.save();
         }
     }
 
     /**
-     * Search recursively for files.
+     * Obtain the folders index used to skip the unchanged folders, the index is loaded once for
+     * each rename run and the folders of unmounted volumes are removed.
      *
-     * @param files List of files and folders for current folder.
-     */
-    private void recursiveFolderScan(File[] files) {
-        int index;
-        String fileName;
-        FileNameModel fileNameModel;
-        FileRenameData originalData;
-        if (files != null) {
-            for (File file : files) {
-                if (file.exists() && !file.isHidden()) {
-                    if (file.isDirectory()) {
-                        recursiveFolderScan(file.listFiles());
-                    }
-                    if (file.isFile()) {
-                        fileName = file.getName();
-                        index = renamePatternsUtilities.matchFileNameBefore(fileName);
-                        if (index > -1) {
-                            fileNameModel = mFileNameModels[index];
-                            originalData = new FileRenameData(-1, null,
-                                    file.getAbsolutePath(),
-                                    fileName,
-                                    fileName,
-                                    getFileMimeType(fileName),
-                                    file.lastModified(),
-                                    file.length());
-                            originalData.setFileNamePatternBefore(fileNameModel.getBefore());
-                            originalData.setFileNamePatternAfter(fileNameModel.getAfter());
-                            if (Utilities.isMoveFiles(fileNameModel.getSelectedFolder())) {
-                                originalData.setMoveToFolderPath(fileNameModel.getSelectedFolder().getFullPath());
-                            }
-                            mListFiles.add(originalData);
-                        }
+     * @return The folders index.
+     */
+    private DirectoryTreeIndex getDirectoryTreeIndex() {
+        if (mDirectoryTreeIndex == null) {
+            StringBuilder signature = new StringBuilder();
+            for (FileNameModel fileNameModel : mFileNameModels) {
+                signature.append(fileNameModel.getBefore()).append('|');
+            }
+            mDirectoryTreeIndex = new DirectoryTreeIndex(new File(mApplication.getCacheDir(),
+                    DIRECTORY_TREE_INDEX_FILE), signature.toString());
+            mDirectoryTreeIndex.load();
+            List<MountVolume> volumes = mApplication.getMountedVolumes();
+            if (volumes != null && !volumes.isEmpty()) {
+                List<String> volumePaths = new ArrayList<>();
+                for (MountVolume volume : volumes) {
+                    if (volume.isMounted() && volume.getPath() != null) {
+                        volumePaths.add(volume.getPath());
                     }
                 }
+                mDirectoryTreeIndex.retainVolumes(volumePaths);
             }
         }
+        return mDirectoryTreeIndex;
+    }
+
+    /**
+     * Search recursively for files. The folders not changed since the last scan and without
+     * matching files are not listed again, only their sub folders are checked.
+     *
+     * @param folder       The folder to scan.
+     * @param lastModified The last modified time of the folder.
+     * @param scanner      The scanner used to list the folders.
+     * @param treeIndex    The folders index.
+     */
+    private void recursiveFolderScan(File folder, long lastModified, FolderScanner scanner,
+                                     DirectoryTreeIndex treeIndex) {
+        String folderPath = folder.getAbsolutePath();
+        DirectoryTreeIndex.Entry entry = treeIndex.getUnchanged(folderPath, lastModified);
+        if (entry != null) {
+            File subFolder;
+            for (String name : entry.getFolders()) {
+                subFolder = new File(folder, name);
+                recursiveFolderScan(subFolder, scanner.getLastModified(subFolder), scanner, treeIndex);
+            }
+            return;
+        }
+        ScanVisitor visitor = new ScanVisitor(scanner, treeIndex);
+        if (scanner.listFolder(folder, visitor)) {
+            treeIndex.put(folderPath, lastModified, visitor.mMatches, visitor.mFolders);
+        }
     }
 
     /**
@@ -1001,18 +1458,24 @@ public class FileRenameThread implements Runnable {
     private void scanMediaStore(String selection, String[] selectionArgs) {
         mApplication.logD(TAG, "Scanning for the files using media store.");
         for (Uri uri : mMediaStoreURIs) {
-            populateListFiles(uri, selection, selectionArgs);
+            populateListFiles(uri, selection, selectionArgs, null);
         }
     }
 
     /**
-     * Scan for files from selected URI.
+     * Scan for files from selected URI. The files provided using the file scheme are checked
+     * directly, without using the media store.
+     *
+     * @param fileUris The URIs of the files to be renamed.
      */
-    private void scanSelectedFiles() {
+    private void scanSelectedFiles(List<Uri> fileUris) {
         StringBuilder selection = new StringBuilder();
-        String[] selectionArgs = new String[mFileUris.size()];
-        int i = 0;
-        for (Uri uri : mFileUris) {
+        List<String> selectionArgs = new ArrayList<>();
+        for (Uri uri : fileUris) {
+            if ("file".equals(uri.getScheme())) {
+                addSelectedFile(new File(uri.getPath()));
+                continue;
+            }
             if (selection.length() > 0) {
                 selection.append(',');
             } else {
@@ -1021,10 +1484,53 @@ public class FileRenameThread implements Runnable {
                 selection.append(" IN (");
             }
             selection.append('?');
-            selectionArgs[i++] = uri.getLastPathSegment(); // media id or file name
+            selectionArgs.add(uri.getLastPathSegment()); // media id or file name
+        }
+        if (!selectionArgs.isEmpty()) {
+            selection.append(")");
+            scanMediaStore(selection.toString(), selectionArgs.toArray(new String[selectionArgs.size()]));
+        }
+    }
+
+    /**
+     * Add a file reported by the folder observer to the list of files to be renamed, if its
+     * name is matching a file name pattern.
+     *
+     * @param file The file to be checked.
+     */
+    private void addSelectedFile(File file) {
+        if (file.isFile() && !file.isHidden()) {
+            int index = renamePatternsUtilities.matchFileNameBefore(file.getName());
+            if (index > -1) {
+                addFileRenameData(file, index, file.lastModified(), file.length());
+            }
+        }
+    }
+
+    /**
+     * Add a file found on the disk to the list of files to be renamed.
+     *
+     * @param file         The file to be renamed.
+     * @param index        The index of the matching file name pattern.
+     * @param lastModified The last modified time of the file.
+     * @param size         The file size.
+     */
+    private void addFileRenameData(File file, int index, long lastModified, long size) {
+        String fileName = file.getName();
+        FileNameModel fileNameModel = mFileNameModels[index];
+        FileRenameData originalData = new FileRenameData(-1, null,
+                file.getAbsolutePath(),
+                fileName,
+                fileName,
+                getFileMimeType(fileName),
+                lastModified,
+                size);
+        originalData.setFileNamePatternBefore(fileNameModel.getBefore());
+        originalData.setFileNamePatternAfter(fileNameModel.getAfter());
+        if (Utilities.isMoveFiles(fileNameModel.getSelectedFolder())) {
+            originalData.setMoveToFolderPath(fileNameModel.getSelectedFolder().getFullPath());
         }
-        selection.append(")");
-        scanMediaStore(selection.toString(), selectionArgs);
+        mListFiles.add(originalData);
     }
 
     /**
@@ -1048,7 +1554,49 @@ public class FileRenameThread implements Runnable {
                 selectionArgs[i++] = folderTemp + "%";
             }
         }
-        scanMediaStore(selection != null ? selection.toString() : null, selectionArgs);
+        scanMediaStoreIncremental(selection != null ? selection.toString() : null, selectionArgs);
+    }
+
+    /**
+     * Scan the media store for records added after the last scan, a full scan is done
+     * periodically, when the scan criteria are changed or when the user started the renaming.
+     *
+     * @param selection     A filter declaring which rows to return.
+     * @param selectionArgs The selection arguments.
+     */
+    private void scanMediaStoreIncremental(String selection, String[] selectionArgs) {
+        if (mScanMarks == null) {
+            mScanMarks = new MediaStoreScanMarks(mApplication,
+                    getScanSignature(selectionArgs), mUserInitiated);
+        }
+        mApplication.logD(TAG, "Scanning for the files using media store, full scan: " + mScanMarks.isFullScan());
+        for (Uri uri : mMediaStoreURIs) {
+            populateListFiles(uri, mScanMarks.getSelection(uri, selection),
+                    mScanMarks.getSelectionArgs(uri, selectionArgs), mScanMarks);
+        }
+    }
+
+    /**
+     * Build a text describing the scan criteria: the scanned media store URIs, the selected
+     * folders and the file name patterns.
+     *
+     * @param selectionArgs The selection arguments with the selected folders.
+     * @return The scan signature.
+     */
+    private String getScanSignature(String[] selectionArgs) {
+        StringBuilder sb = new StringBuilder();
+        for (Uri uri : mMediaStoreURIs) {
+            sb.append(uri).append('|');
+        }
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs) {
+                sb.append(arg).append('|');
+            }
+        }
+        for (FileNameModel fileNameModel : mFileNameModels) {
+            sb.append(fileNameModel.getBefore()).append('|');
+        }
+        return sb.toString();
     }
 
     /**
@@ -1072,8 +1620,10 @@ public class FileRenameThread implements Runnable {
      * @param selectionArgs You may include ?s in selection, which will be
      *         replaced by the values from selectionArgs, in the order that they
      *         appear in the selection. The values will be bound as Strings.
+     * @param scanMarks The scan marks to be updated, could be null.
      */
-    private void populateListFiles(Uri uri, String selection, String[] selectionArgs) {
+    private void populateListFiles(Uri uri, String selection, String[] selectionArgs,
+                                   MediaStoreScanMarks scanMarks) {
         Cursor cursor = null;
         String[] columns = new String[]{
                 MediaStore.MediaColumns._ID,
@@ -1094,6 +1644,11 @@ public class FileRenameThread implements Runnable {
                 FileRenameData originalData;
                 FileNameModel fileNameModel;
                 while (cursor.moveToNext()) {
+                    id = cursor.getInt(cursor.getColumnIndex(MediaStore.MediaColumns._ID));
+                    dateAdded = cursor.getLong(cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED));
+                    if (scanMarks != null) {
+                        scanMarks.onRecordScanned(uri, id, dateAdded);
+                    }
                     data = cursor.getString(cursor
                             .getColumnIndex(MediaStore.MediaColumns.DATA));
                     data = getValidFullFileName(data);
@@ -1102,11 +1657,9 @@ public class FileRenameThread implements Runnable {
                         index = renamePatternsUtilities.matchFileNameBefore(fileName);
                         if (index > -1) {
                             fileNameModel = mFileNameModels[index];
-                            id = cursor.getInt(cursor.getColumnIndex(MediaStore.MediaColumns._ID));
                             title = cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.TITLE));
                             displayName = cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.DISPLAY_NAME));
                             mimeType = cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE));
-                            dateAdded = cursor.getLong(cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED));
                             size = cursor.getLong(cursor.getColumnIndex(MediaStore.MediaColumns.SIZE));
                             originalData = new FileRenameData(id, uri, data, title, displayName, mimeType, dateAdded, size);
                             originalData.setFileNamePatternBefore(fileNameModel.getBefore());
@@ -1115,6 +1668,9 @@ public class FileRenameThread implements Runnable {
                                 originalData.setMoveToFolderPath(fileNameModel.getSelectedFolder().getFullPath());
                             }
                             mListFiles.add(originalData);
+                            if (scanMarks != null) {
+                                scanMarks.addPending(uri, id);
+                            }
                         }
                     }
                 }
@@ -1183,10 +1739,10 @@ public class FileRenameThread implements Runnable {
      *                    extension.
      * @param displayName The file display name, usually is the file name without the
      *                    path.
-     * @return True if the media store was updated.
      */
-    private boolean updateFileRecord(Uri uri, int id, String data, String oldData,
+    private void updateFileRecord(Uri uri, int id, String data, String oldData,
                                      String title, String displayName) {
+        long startTime = RenameMetrics.start();
         String whereClause;
         String[] whereParam = new String[1];
         if (id != -1) {
@@ -1202,10 +1758,8 @@ public class FileRenameThread implements Runnable {
         } else if (mApplication.isSendBroadcastEnabled()) {
             prepareBroadcastMessage(uri, id);
         }
-        if (uri == null) {
-            return updateMediaStoreData(data, title, displayName, whereClause, whereParam);
-        }
-        return updateMediaStoreData(uri, data, title, displayName, whereClause, whereParam);
+        mMediaStoreBatchUpdater.update(uri, data, title, displayName, whereClause, whereParam);
+        mRenameMetrics.record(RenameMetrics.STAGE_MEDIA_STORE_UPDATE, startTime);
     }
 
     /**
@@ -1223,86 +1777,146 @@ public class FileRenameThread implements Runnable {
     }
 
     /**
-     * Update the media store database with data file details.
+     * Get human readable data.
      *
-     * @param data        The file data, normally this is the file path.
-     * @param title       The file title, usually is the file name without path and
-     *                    extension.
-     * @param displayName The file display name, usually is the file name without the
-     *                    path.
-     * @param whereClause An SQL WHERE clause.
-     * @param whereParam  The SQL WHERE parameter.
-     * @return True if the media store was updated.
+     * @param data Original rename data.
+     * @return Human readable data.
      */
-    private boolean updateMediaStoreData(String data, String title, String displayName,
-                                         String whereClause, String[] whereParam) {
-        for (Uri uri : mMediaStoreURIs) {
-            if (updateMediaStoreData(uri, data, title, displayName, whereClause, whereParam)) {
-                return true;
-            }
-        }
-        return false;
+    private String getLogFileData(FileRenameData data) {
+        return data.getId() + " " + data.getData();
     }
 
     /**
-     * Update the media store database with data file details.
-     *
-     * @param uri         The file URI.
-     * @param data        The file data, normally this is the file path.
-     * @param title       The file title, usually is the file name without path and
-     *                    extension.
-     * @param displayName The file display name, usually is the file name without the
-     *                    path.
-     * @param whereClause An SQL WHERE clause.
-     * @param whereParam  The SQL WHERE parameter.
-     * @return True if the media store was updated.
+     * Rename all files which share the same target folder. The name suffix counters are kept
+     * per task, so the tasks of different folders can run in parallel.
      */
-    private boolean updateMediaStoreData(Uri uri, String data, String title, String displayName,
-                                         String whereClause, String[] whereParam) {
-        boolean result = false;
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DATA, data);
-        contentValues.put(MediaStore.MediaColumns.TITLE, title);
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
-        try {
-            int count = mContentResolver.update(uri, contentValues, whereClause, whereParam);
-            result = (count == 1);
-            mApplication.logD(TAG, "Media store update where: " + whereParam[0] + " data: " + data + " result:" + result);
-        } catch (Exception ex) {
-            mApplication.logE(TAG, "Cannot be updated the content resolver: "
-                    + uri.toString() + " where: " + whereParam[0] + " data: " + data +
-                    " Exception: " + ex.getMessage(), ex);
-            if (ex instanceof android.database.sqlite.SQLiteConstraintException) {
-                deleteWrongRecordMediaStoreData(uri, whereClause, whereParam);
+    private class FolderRenameTask {
+        private final String mFolderPath;
+        private final List<FileRenameData> mFiles = new ArrayList<>();
+        private int mPreviousFileModelId = -1;
+        private final FileNameSequence mNameSequence = new FileNameSequence(mFileNameSuffixFormat,
+                DSCApplication.getLocale(), mAppendOriginalName);
+        private final List<Future<Long>> mFileDates = new ArrayList<>();
+        private Future<Long> mFileDate;
+        private final StringBuilder mNameBuilder = new StringBuilder();
+        private int mRenamed;
+        private int mFailed;
+
+        FolderRenameTask(String folderPath) {
+            mFolderPath = folderPath;
+        }
+
+        /**
+         * Rename all files of this folder, in the original order.
+         *
+         * @param max Total number of files, used for progress updates.
+         */
+        void renameFiles(int max) {
+            FileRenameData data;
+            int size = mFiles.size();
+            try {
+                for (int i = 0; i < size; i++) {
+                    while (mFileDates.size() < size && mFileDates.size() <= i + METADATA_PREFETCH_WINDOW) {
+                        mFileDates.add(submitMetadataExtraction(mFiles.get(mFileDates.size())));
+                    }
+                    data = mFiles.get(i);
+                    mFileDate = mFileDates.get(i);
+                    mFileDates.set(i, null);
+                    if (renameCurrentFile(this, data)) {
+                        mRenamed++;
+                        if (mScanMarks != null) {
+                            mScanMarks.removePending(data.getUri(), data.getId());
+                        }
+                    } else {
+                        mFailed++;
+                    }
+                    onProgressUpdate(mProcessedFiles.incrementAndGet(), max);
+                    if (!mNoDelay) {
+                        executeFileRenameDelay();
+                    }
+                    if (mApplication.isRenameFileTaskCanceled()) {
+                        break;
+                    }
+                }
+            } finally {
+                for (Future<Long> future : mFileDates) {
+                    if (future != null) {
+                        future.cancel(false);
+                    }
+                }
+                mFileDates.clear();
+                mFileDate = null;
             }
         }
-        return result;
+
+        /**
+         * Obtain the metadata date of the current file, extracted by the metadata stage, or
+         * extract it now if it was not prefetched.
+         *
+         * @param data The current file data.
+         * @param file The current file.
+         * @return The file date.
+         */
+        long takeFileDate(FileRenameData data, File file) {
+            Future<Long> future = mFileDate;
+            mFileDate = null;
+            if (future != null) {
+                try {
+                    Long milliseconds = future.get();
+                    if (milliseconds != null) {
+                        return milliseconds;
+                    }
+                } catch (InterruptedException e) {
+                    mApplication.logE(TAG, "InterruptedException", e);
+                } catch (ExecutionException e) {
+                    mApplication.logE(TAG, "Metadata extraction failed: " + getLogFileData(data), e);
+                } catch (CancellationException e) {
+                    // the metadata stage was stopped
+                }
+            }
+            return getDateFromExif(data, file);
+        }
     }
 
     /**
-     * Method used to remove wrong media store record.
-     *
-     * @param uri         Wrong media store URI root.
-     * @param whereClause An SQL WHERE clause.
-     * @param whereParam  The SQL WHERE parameter.
+     * The media metadata retriever used by a thread.
      */
-    private void deleteWrongRecordMediaStoreData(Uri uri, String whereClause, String[] whereParam) {
-        try {
-            int count = mContentResolver.delete(uri, whereClause, whereParam);
-            mApplication.logD(TAG, "Media store delete where: " + whereParam[0] + " count:" + count);
-        } catch (Exception ex) {
-            mApplication.logE(TAG, "Cannot be deleted the wrong record: "
-                    + whereParam[0] + " Exception: " + ex.getMessage(), ex);
-        }
+    private static class RetrieverHolder {
+        private Object mRetriever;
     }
 
     /**
-     * Get human readable data.
-     *
-     * @param data Original rename data.
-     * @return Human readable data.
+     * Receive the entries of a scanned folder, the sub folders are scanned recursively when
+     * they are found, to keep the listing order.
      */
-    private String getLogFileData(FileRenameData data) {
-        return data.getId() + " " + data.getData();
+    private class ScanVisitor implements FolderScanner.Visitor {
+        private final FolderScanner mScanner;
+        private final DirectoryTreeIndex mTreeIndex;
+        private final List<String> mFolders = new ArrayList<>();
+        private int mMatches;
+        private int mIndex;
+
+        ScanVisitor(FolderScanner scanner, DirectoryTreeIndex treeIndex) {
+            mScanner = scanner;
+            mTreeIndex = treeIndex;
+        }
+
+        @Override
+        public void onFolder(File folder, long lastModified) {
+            mFolders.add(folder.getName());
+            recursiveFolderScan(folder, lastModified, mScanner, mTreeIndex);
+        }
+
+        @Override
+        public boolean acceptFile(String fileName) {
+            mIndex = renamePatternsUtilities.matchFileNameBefore(fileName);
+            return mIndex > -1;
+        }
+
+        @Override
+        public void onFile(File file, long lastModified, long size) {
+            addFileRenameData(file, mIndex, lastModified, size);
+            mMatches++;
+        }
     }
 }
@@ -20,83 +20,236 @@ package ro.ciubex.dscautorename.task;
 
 import android.util.Log;
 
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Queue;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import ro.ciubex.dscautorename.DSCApplication;
-import ro.ciubex.dscautorename.util.Utilities;
+import ro.ciubex.dscautorename.util.RollingLogWriter;
 
 /**
  * A thread used to write logs to a private file.
- * 
+ * <p>
+ * The producers only add the log entries to a lock free queue, the messages are formatted and
+ * written to the logcat and to the log file by this thread, so the producers are never blocked
+ * by the formatting or by the disk writes. The log is kept in rolling segments, the buffered
+ * lines are written when the buffer is full, when the thread is idle or when an error is logged.
+ * Optionally the log is written in a compact binary format, decoded by the
+ * {@link BinaryLogDecoder}, in this case only the errors are also written to the logcat.
+ *
  * @author Claudiu Ciobotariu
  * 
  */
 public class LogThread implements Runnable, Closeable {
+	private static final String TAG = LogThread.class.getName();
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(500);
 
-	private static final List<String> logs = new ArrayList<>();
-	private File logsFolder;
-	private File logFile;
-	private boolean closing;
-	private boolean closed;
+	private final Queue<LogEntry> logs = new ConcurrentLinkedQueue<>();
+	private final Queue<CountDownLatch> flushRequests = new ConcurrentLinkedQueue<>();
+	private final RollingLogWriter logWriter;
+	private final RollingLogWriter inactiveWriter;
+	private final BinaryLogEncoder binaryEncoder;
+	private volatile boolean closing;
+	private volatile boolean closed;
+	private volatile Thread writerThread;
 	private SimpleDateFormat sFormatter;
+	private final StringBuilder sBuilder = new StringBuilder();
+	private final Date sDate = new Date();
 
-	public LogThread(File logsFolder) {
-		this.logsFolder = logsFolder;
+	/**
+	 * A log entry, the message is formatted by the writer thread.
+	 */
+	private static class LogEntry {
+		final int priority;
+		final String tag;
+		final long milliseconds;
+		final String template;
+		final Object[] args;
+		final Throwable throwable;
+
+		LogEntry(int priority, String tag, long milliseconds, String template, Object[] args,
+				 Throwable throwable) {
+			this.priority = priority;
+			this.tag = tag;
+			this.milliseconds = milliseconds;
+			this.template = template;
+			this.args = args;
+			this.throwable = throwable;
+		}
+	}
+
+	/**
+	 * Create the log thread.
+	 *
+	 * @param logsFolder   The folder of the log files.
+	 * @param segmentSize  The maximum size in bytes of a log file.
+	 * @param segmentCount Number of log files to keep.
+	 * @param binary       True if the logs should be written in the binary format.
+	 */
+	public LogThread(File logsFolder, long segmentSize, int segmentCount, boolean binary) {
+		RollingLogWriter textWriter = new RollingLogWriter(logsFolder,
+				DSCApplication.LOG_FILE_NAME, segmentSize, segmentCount);
+		RollingLogWriter binaryWriter = new RollingLogWriter(logsFolder,
+				DSCApplication.LOG_BINARY_FILE_NAME, segmentSize, segmentCount);
+		logWriter = binary ? binaryWriter : textWriter;
+		inactiveWriter = binary ? textWriter : binaryWriter;
+		binaryEncoder = binary ? new BinaryLogEncoder(binaryWriter) : null;
 		closing = false;
 		closed = false;
-		sFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", DSCApplication.getLocale());
-		sFormatter.setTimeZone(TimeZone.getDefault());
+		sFormatter = createDateFormat();
 	}
 
 	/**
-	 * Add a log string to logs collection
+	 * Create the date format used for the log lines.
 	 *
+	 * @return The log date format.
+	 */
+	static SimpleDateFormat createDateFormat() {
+		SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", DSCApplication.getLocale());
+		formatter.setTimeZone(TimeZone.getDefault());
+		return formatter;
+	}
+
+	/**
+	 * Add a log entry to logs queue.
+	 *
+	 * @param priority     The log priority, like Log.DEBUG or Log.ERROR.
+	 * @param tag          The log tag.
 	 * @param milliseconds Log timestamp.
-	 * @param message      Log text.
+	 * @param template     Log text, the {} placeholders are replaced by the arguments.
+	 * @param args         The template arguments, or null.
 	 * @param throwable    An exception to log
+	 * @return False if the log thread is closing and the log entry was not added.
+	 */
+	public boolean addLog(int priority, String tag, long milliseconds, String template, Object[] args,
+						  Throwable throwable) {
+		if (closing) {
+			return false;
+		}
+		logs.offer(new LogEntry(priority, tag, milliseconds, template, args, throwable));
+		Thread thread = writerThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return true;
+	}
+
+	/**
+	 * Replace the {} placeholders of a template with the arguments.
+	 *
+	 * @param sb       The builder where the message is appended.
+	 * @param template The message template.
+	 * @param args     The template arguments, or null.
+	 */
+	public static void appendMessage(StringBuilder sb, String template, Object[] args) {
+		if (args == null || args.length == 0) {
+			sb.append(template);
+			return;
+		}
+		int start = 0, index, arg = 0;
+		while (arg < args.length && (index = template.indexOf("{}", start)) != -1) {
+			sb.append(template, start, index).append(args[arg++]);
+			start = index + 2;
+		}
+		sb.append(template, start, template.length());
+	}
+
+	/**
+	 * Append a text log line.
+	 *
+	 * @param sb         The builder where the line is appended.
+	 * @param time       The formatted log time.
+	 * @param priority   The log priority.
+	 * @param tag        The log tag.
+	 * @param message    The log message.
+	 * @param stackTrace The stack trace of the logged exception, or null.
+	 */
+	static void appendLogLine(StringBuilder sb, String time, int priority, String tag, String message,
+							  String stackTrace) {
+		sb.append(time).append('\t')
+				.append(priority == Log.ERROR ? "ERROR" : "DEBUG").append('\t')
+				.append(tag).append('\t').append(message);
+		if (stackTrace != null) {
+			sb.append('\t').append(stackTrace);
+		}
+	}
+
+	/**
+	 * Write a log entry to the logcat and to the log file.
+	 *
+	 * @param entry The log entry.
+	 * @throws IOException If the entry could not be written.
 	 */
-	public void addLog(long milliseconds, String message, Throwable throwable) {
-		if (!closing) {
-			synchronized (logs) {
-				logs.add(getLogMessage(milliseconds, message, throwable));
-				logs.notifyAll();
+	private void writeEntry(LogEntry entry) throws IOException {
+		String stackTrace = entry.throwable != null ? Log.getStackTraceString(entry.throwable) : null;
+		if (binaryEncoder != null) {
+			if (entry.priority == Log.ERROR) {
+				printLog(entry, getMessage(entry), stackTrace);
 			}
+			binaryEncoder.encode(entry.priority, entry.tag, entry.milliseconds, entry.template,
+					entry.args, stackTrace);
+		} else {
+			logWriter.appendLine(getLogMessage(entry, stackTrace));
+		}
+	}
+
+	/**
+	 * Expand the message template of a log entry.
+	 *
+	 * @param entry The log entry.
+	 * @return The log message.
+	 */
+	private String getMessage(LogEntry entry) {
+		StringBuilder sb = sBuilder;
+		sb.setLength(0);
+		appendMessage(sb, entry.template, entry.args);
+		return sb.toString();
+	}
+
+	private static void printLog(LogEntry entry, String message, String stackTrace) {
+		if (stackTrace != null) {
+			Log.println(entry.priority, entry.tag, message + '\n' + stackTrace);
+		} else {
+			Log.println(entry.priority, entry.tag, message);
 		}
 	}
 
 	/**
 	 * Compose the log message by formatting date and time and add text message.
 	 *
-	 * @param milliseconds Log timestamp.
-	 * @param message      Log text.
-	 * @param throwable    An exception to log
+	 * @param entry      The log entry.
+	 * @param stackTrace The stack trace of the logged exception, or null.
 	 * @return Composed log message.
 	 */
-	private String getLogMessage(long milliseconds, String message, Throwable throwable) {
-		String log = sFormatter.format(new Date(milliseconds)) + "\t" + message;
-		if (throwable != null) {
-			log += "\t" + Log.getStackTraceString(throwable);
-		}
-		return log;
+	private String getLogMessage(LogEntry entry, String stackTrace) {
+		String message = getMessage(entry);
+		printLog(entry, message, stackTrace);
+		StringBuilder sb = sBuilder;
+		sb.setLength(0);
+		sDate.setTime(entry.milliseconds);
+		appendLogLine(sb, sFormatter.format(sDate), entry.priority, entry.tag, message, stackTrace);
+		return sb.toString();
 	}
 
 	/**
-	 * Close root shell
+	 * Stop the writer thread, the logs already queued are written before the log file is closed.
+	 * No new logs are accepted after this call.
 	 */
 	@Override
 	public void close() throws IOException {
-		synchronized (logs) {
-			closing = true;
-			logs.notifyAll();
+		closing = true;
+		Thread thread = writerThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
 		}
 	}
 
@@ -104,87 +257,133 @@ public class LogThread implements Runnable, Closeable {
 		return closed;
 	}
 
+	/**
+	 * Check if the log thread is closing, because it was closed or the log file could not be
+	 * written. A closing log thread does not accept new logs.
+	 *
+	 * @return True if the log thread is closing.
+	 */
+	public boolean isClosing() {
+		return closing;
+	}
+
+	/**
+	 * Wait until the logs added before this call are written to the log file.
+	 *
+	 * @param timeout The maximum time to wait, in milliseconds.
+	 * @return True if the logs were written.
+	 */
+	public boolean flush(long timeout) {
+		Thread thread = writerThread;
+		if (thread == null || closed) {
+			return false;
+		}
+		CountDownLatch latch = new CountDownLatch(1);
+		flushRequests.offer(latch);
+		LockSupport.unpark(thread);
+		try {
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
 	@Override
 	public void run() {
-		BufferedWriter bufferedWriter = null;
+		writerThread = Thread.currentThread();
 		try {
-			createLogFile();
-			bufferedWriter = writeLogs();
+			writeLogs();
 		} catch (IOException e) {
 			closing = true;
+			Log.e(TAG, "IOException: " + e.getMessage(), e);
 		} finally {
-			Utilities.doClose(bufferedWriter);
+			logWriter.close();
+			printPendingLogs();
+			closed = true;
+			releaseFlushRequests();
 		}
-		closed = true;
 	}
 
 	/**
-	 * Write available logs to log file.
-	 * 
+	 * Write available logs to log file, the queue is drained without holding any lock. The
+	 * buffered lines are written to the file after an idle wait with no new logs, so a burst
+	 * of logs is written at once.
+	 *
 	 * @throws IOException
 	 */
-	private BufferedWriter writeLogs() throws IOException {
-		BufferedWriter bufferedWriter = getBufferedWriter();
-		while (!closing) {
-			synchronized (logs) {
-				try {
-					logs.wait();
-					if (isLogFileSizeExceeded()) {
-						Utilities.doClose(bufferedWriter);
-						logFile.delete();
-						createLogFile();
-						bufferedWriter = getBufferedWriter();
-					}
-					for (String log : logs) {
-						bufferedWriter.append(log);
-						bufferedWriter.newLine();
-					}
-					bufferedWriter.flush();
-					logs.clear();
-				} catch (InterruptedException e) {
+	private void writeLogs() throws IOException {
+		LogEntry entry;
+		boolean pending = false;
+		boolean idle = false;
+		while (!closing || !logs.isEmpty()) {
+			entry = logs.poll();
+			if (entry == null) {
+				if (!flushRequests.isEmpty()) {
+					logWriter.flush();
+					pending = false;
+					releaseFlushRequests();
+				} else if (pending && idle) {
+					logWriter.flush();
+					pending = false;
 				}
+				if (!closing) {
+					LockSupport.parkNanos(this, IDLE_WAIT);
+				}
+				idle = true;
+				continue;
 			}
+			idle = false;
+			do {
+				writeEntry(entry);
+				if (entry.priority == Log.ERROR) {
+					logWriter.flush();
+				}
+			} while ((entry = logs.poll()) != null);
+			pending = true;
 		}
-		return bufferedWriter;
 	}
 
-	private BufferedWriter getBufferedWriter() throws IOException {
-		return new BufferedWriter(new FileWriter(logFile, true));
+	/**
+	 * Send the queued logs to the logcat, used for the logs which could not be written to the log
+	 * file before the log thread was stopped.
+	 */
+	private void printPendingLogs() {
+		LogEntry entry;
+		while ((entry = logs.poll()) != null) {
+			printLog(entry, getMessage(entry),
+					entry.throwable != null ? Log.getStackTraceString(entry.throwable) : null);
+		}
 	}
 
 	/**
-	 * Create the log file.
-	 * 
-	 * @throws IOException
+	 * Release the threads waiting for the logs to be written.
 	 */
-	private void createLogFile() throws IOException {
-		logFile = new File(logsFolder, DSCApplication.LOG_FILE_NAME);
-		if (!logFile.exists()) {
-			logFile.createNewFile();
+	private void releaseFlushRequests() {
+		CountDownLatch latch;
+		while ((latch = flushRequests.poll()) != null) {
+			latch.countDown();
 		}
 	}
 
 	/**
-	 * Check the log file size to not exceed the 10MB.
+	 * Get the log files, from the oldest to the current one. The files written before the log
+	 * format was changed are returned first.
 	 *
-	 * @return True if the file size is larger than 10MB.
+	 * @return The log files.
 	 */
-	private boolean isLogFileSizeExceeded() {
-		if (logFile != null && logFile.exists()) {
-			long sizeInMB = logFile.length() / 1048576;
-			if (sizeInMB > 10) {
-				return true;
-			}
-		}
-		return false;
+	public List<File> getLogFiles() {
+		List<File> files = inactiveWriter.getSegments();
+		files.addAll(logWriter.getSegments());
+		return files;
 	}
 
 	/**
-	 * Get the log file.
+	 * Check if the logs are written in the binary format.
 	 *
-	 * @return The log file.
+	 * @return True if the logs are written in the binary format.
 	 */
-	public File getLogFile() {
-		return logFile;
+	public boolean isBinary() {
+		return binaryEncoder != null;
 	}
 }
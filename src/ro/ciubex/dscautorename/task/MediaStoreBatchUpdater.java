@@ -0,0 +1,378 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ro.ciubex.dscautorename.DSCApplication;
+import ro.ciubex.dscautorename.util.RenameMetrics;
+
+/**
+ * Collect the media store updates of renamed files and apply them in batches, to avoid one
+ * content provider call for each renamed file. If a batch fails, each update is applied
+ * separately, so wrong records can still be removed.
+ * <p>
+ * The updates are applied on a separate commit thread, fed through a bounded queue, so the rename
+ * workers are not waiting for the content provider. When the queue is full the rename workers
+ * are blocked until the commit thread catches up.
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public class MediaStoreBatchUpdater implements Runnable {
+    private final static String TAG = MediaStoreBatchUpdater.class.getName();
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final long MAX_BATCH_DELAY = 2000;
+    private static final int MAX_QUEUE_SIZE = 4 * MAX_BATCH_SIZE;
+    private DSCApplication mApplication;
+    private final RenameMetrics mRenameMetrics;
+    private ContentResolver mContentResolver;
+    private List<Uri> mMediaStoreURIs;
+    private final BlockingQueue<Update> mQueue;
+    private Thread mCommitThread;
+
+    public MediaStoreBatchUpdater(DSCApplication application, ContentResolver contentResolver,
+                                  List<Uri> mediaStoreURIs) {
+        mApplication = application;
+        mRenameMetrics = application.getRenameMetrics();
+        mContentResolver = contentResolver;
+        mMediaStoreURIs = mediaStoreURIs;
+        mQueue = new LinkedBlockingQueue<>(MAX_QUEUE_SIZE);
+    }
+
+    /**
+     * Queue a media store update. The pending updates are applied when the batch is full or
+     * when the oldest pending update is waiting for too long.
+     *
+     * @param uri         The file URI, if null the update is done on all media store URIs.
+     * @param data        The file data, normally this is the file path.
+     * @param title       The file title, usually is the file name without path and
+     *                    extension.
+     * @param displayName The file display name, usually is the file name without the
+     *                    path.
+     * @param whereClause An SQL WHERE clause.
+     * @param whereParam  The SQL WHERE parameter.
+     */
+    public void update(Uri uri, String data, String title, String displayName,
+                       String whereClause, String[] whereParam) {
+        Update update = new Update(uri, data, title, displayName, whereClause, whereParam);
+        startCommitThread();
+        try {
+            mQueue.put(update);
+        } catch (InterruptedException e) {
+            mApplication.logE(TAG, "Interrupted while queuing, apply the update directly.", e);
+            applyUpdate(update);
+        }
+    }
+
+    /**
+     * Wait until all queued updates are applied.
+     */
+    public void flush() {
+        if (sendMarker(Update.newMarker())) {
+            mApplication.logD(TAG, "Media store updates flushed.");
+        }
+    }
+
+    /**
+     * Apply all queued updates and stop the commit thread.
+     */
+    public void close() {
+        if (sendMarker(Update.newMarker())) {
+            synchronized (this) {
+                mCommitThread.interrupt();
+                mCommitThread = null;
+            }
+        }
+    }
+
+    /**
+     * Start the commit thread, if it is not already started.
+     */
+    private synchronized void startCommitThread() {
+        if (mCommitThread == null) {
+            mCommitThread = new Thread(this, "MediaStoreCommit");
+            mCommitThread.start();
+        }
+    }
+
+    /**
+     * Queue a marker and wait until the commit thread reaches it.
+     *
+     * @param marker The marker to queue.
+     * @return True if the commit thread was running and all previous updates were applied.
+     */
+    private boolean sendMarker(Update marker) {
+        synchronized (this) {
+            if (mCommitThread == null) {
+                return false;
+            }
+        }
+        try {
+            mQueue.put(marker);
+            marker.processed.await();
+            return true;
+        } catch (InterruptedException e) {
+            mApplication.logE(TAG, "Interrupted while waiting for the media store updates.", e);
+        }
+        return false;
+    }
+
+    /**
+     * The commit thread loop, the updates are collected until the batch is full, the oldest
+     * update is waiting for too long, or a marker is received.
+     */
+    @Override
+    public void run() {
+        List<Update> pending = new ArrayList<>();
+        long firstPendingTime = 0;
+        Update update;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (pending.isEmpty()) {
+                    update = mQueue.take();
+                    firstPendingTime = SystemClock.elapsedRealtime();
+                } else {
+                    update = mQueue.poll(Math.max(0, firstPendingTime + MAX_BATCH_DELAY
+                            - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+                }
+                if (update != null && update.processed == null) {
+                    pending.add(update);
+                }
+                if (update == null || update.processed != null || pending.size() >= MAX_BATCH_SIZE) {
+                    if (!pending.isEmpty()) {
+                        applyPendingUpdates(pending);
+                        pending = new ArrayList<>();
+                    }
+                    if (update != null && update.processed != null) {
+                        update.processed.countDown();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // the commit thread is stopped after the last marker
+        }
+        if (!pending.isEmpty()) {
+            applyPendingUpdates(pending);
+        }
+    }
+
+    /**
+     * Apply the collected updates, the commit thread should not be stopped by a failed batch.
+     *
+     * @param updates The updates to apply.
+     */
+    private void applyPendingUpdates(List<Update> updates) {
+        long startTime = RenameMetrics.start();
+        try {
+            applyUpdates(updates);
+        } catch (RuntimeException e) {
+            mApplication.logE(TAG, "Media store updates failed: " + e.getMessage(), e);
+        }
+        mRenameMetrics.record(RenameMetrics.STAGE_MEDIA_STORE_BATCH, startTime);
+    }
+
+    /**
+     * Apply a list of updates using a single content provider batch.
+     *
+     * @param updates The updates to apply.
+     */
+    private void applyUpdates(List<Update> updates) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (Update update : updates) {
+            if (update.uri != null) {
+                operations.add(update.buildOperation(update.uri));
+            } else if (update.isUpdateByData()) {
+                for (Uri uri : mMediaStoreURIs) {
+                    operations.add(update.buildOperation(uri));
+                }
+            }
+        }
+        boolean batchApplied = operations.isEmpty();
+        mRenameMetrics.add(RenameMetrics.COUNTER_MEDIA_STORE_OPERATIONS, operations.size());
+        if (!batchApplied) {
+            try {
+                ContentProviderResult[] results = mContentResolver.applyBatch(MediaStore.AUTHORITY, operations);
+                batchApplied = true;
+                mApplication.logD(TAG, "Media store batch updated " + countUpdated(results)
+                        + " records using " + operations.size() + " operations.");
+            } catch (Exception ex) {
+                mApplication.logE(TAG, "Media store batch update failed, apply "
+                        + updates.size() + " updates one by one: " + ex.getMessage(), ex);
+            }
+        }
+        for (Update update : updates) {
+            if (!batchApplied || (update.uri == null && !update.isUpdateByData())) {
+                applyUpdate(update);
+            }
+        }
+    }
+
+    /**
+     * Count the number of updated rows.
+     *
+     * @param results The batch results.
+     * @return Number of updated rows.
+     */
+    private int countUpdated(ContentProviderResult[] results) {
+        int count = 0;
+        for (ContentProviderResult result : results) {
+            if (result.count != null) {
+                count += result.count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply a single update, used when the batch failed or when the record should be updated
+     * only on the first media store URI which contains it.
+     *
+     * @param update The update to apply.
+     */
+    private void applyUpdate(Update update) {
+        if (update.uri != null) {
+            applyUpdate(update.uri, update);
+        } else {
+            for (Uri uri : mMediaStoreURIs) {
+                if (applyUpdate(uri, update)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the media store database with data file details.
+     *
+     * @param uri    The media store URI.
+     * @param update The update to apply.
+     * @return True if the media store was updated.
+     */
+    private boolean applyUpdate(Uri uri, Update update) {
+        boolean result = false;
+        try {
+            int count = mContentResolver.update(uri, update.getContentValues(), update.whereClause, update.whereParam);
+            result = (count == 1);
+            mApplication.logD(TAG, "Media store update where: {} data: {} result: {}", update.whereParam[0], update.data, result);
+        } catch (Exception ex) {
+            mApplication.logE(TAG, "Cannot be updated the content resolver: "
+                    + uri.toString() + " where: " + update.whereParam[0] + " data: " + update.data +
+                    " Exception: " + ex.getMessage(), ex);
+            if (ex instanceof SQLiteConstraintException) {
+                deleteWrongRecordMediaStoreData(uri, update.whereClause, update.whereParam);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Method used to remove wrong media store record.
+     *
+     * @param uri         Wrong media store URI root.
+     * @param whereClause An SQL WHERE clause.
+     * @param whereParam  The SQL WHERE parameter.
+     */
+    private void deleteWrongRecordMediaStoreData(Uri uri, String whereClause, String[] whereParam) {
+        try {
+            int count = mContentResolver.delete(uri, whereClause, whereParam);
+            mApplication.logD(TAG, "Media store delete where: " + whereParam[0] + " count:" + count);
+        } catch (Exception ex) {
+            mApplication.logE(TAG, "Cannot be deleted the wrong record: "
+                    + whereParam[0] + " Exception: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * A pending media store update.
+     */
+    private static class Update {
+        final Uri uri;
+        final String data;
+        final String title;
+        final String displayName;
+        final String whereClause;
+        final String[] whereParam;
+        final CountDownLatch processed;
+
+        /**
+         * Create a marker, the latch is released when all previous updates were applied.
+         *
+         * @return The marker.
+         */
+        static Update newMarker() {
+            return new Update(null, null, null, null, null, null, new CountDownLatch(1));
+        }
+
+        Update(Uri uri, String data, String title, String displayName,
+               String whereClause, String[] whereParam) {
+            this(uri, data, title, displayName, whereClause, whereParam, null);
+        }
+
+        private Update(Uri uri, String data, String title, String displayName,
+               String whereClause, String[] whereParam, CountDownLatch processed) {
+            this.uri = uri;
+            this.data = data;
+            this.title = title;
+            this.displayName = displayName;
+            this.whereClause = whereClause;
+            this.whereParam = whereParam;
+            this.processed = processed;
+        }
+
+        /**
+         * An update by file path can be safely applied on all media store URIs, an update by ID
+         * should be applied only on the first URI which contains the record.
+         *
+         * @return True if the record is identified by the file path.
+         */
+        boolean isUpdateByData() {
+            return whereClause.startsWith(MediaStore.MediaColumns.DATA);
+        }
+
+        ContentValues getContentValues() {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(MediaStore.MediaColumns.DATA, data);
+            contentValues.put(MediaStore.MediaColumns.TITLE, title);
+            contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+            return contentValues;
+        }
+
+        ContentProviderOperation buildOperation(Uri target) {
+            return ContentProviderOperation.newUpdate(target)
+                    .withValues(getContentValues())
+                    .withSelection(whereClause, whereParam)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keep for each media store URI the highest _ID and DATE_ADDED already processed, so next scans
+ * should query only the newer records. The marks are saved in a separate preferences file, which
+ * is not included in the backup. A full scan is done periodically, or when the scan criteria
+ * are changed.
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public class MediaStoreScanMarks {
+    private static final String PREFS_NAME = "media_store_scan_marks";
+    private static final String KEY_LAST_FULL_SCAN = "lastFullScan";
+    private static final String KEY_SCAN_SIGNATURE = "scanSignature";
+    private static final String KEY_ID_SUFFIX = "#id";
+    private static final String KEY_DATE_SUFFIX = "#dateAdded";
+    private static final long FULL_SCAN_INTERVAL = 24 * 60 * 60 * 1000L;
+
+    private final SharedPreferences mPreferences;
+    private final Map<Uri, Mark> mMarks;
+    private final Map<Uri, Set<Integer>> mPending;
+    private boolean mFullScan;
+
+    /**
+     * Load the scan marks.
+     *
+     * @param context       The application context.
+     * @param scanSignature A text describing the scan criteria, like selected folders and
+     *                      patterns, if it is changed then a full scan is required.
+     * @param forceFullScan True if a full scan should be done.
+     */
+    public MediaStoreScanMarks(Context context, String scanSignature, boolean forceFullScan) {
+        mPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mMarks = new HashMap<>();
+        mPending = new HashMap<>();
+        long lastFullScan = mPreferences.getLong(KEY_LAST_FULL_SCAN, 0);
+        long now = System.currentTimeMillis();
+        mFullScan = forceFullScan
+                || now - lastFullScan > FULL_SCAN_INTERVAL
+                || now < lastFullScan
+                || !scanSignature.equals(mPreferences.getString(KEY_SCAN_SIGNATURE, null));
+        if (mFullScan) {
+            mPreferences.edit().putString(KEY_SCAN_SIGNATURE, scanSignature).apply();
+        }
+    }
+
+    /**
+     * Check if this is a full scan.
+     *
+     * @return True if all media store records should be scanned.
+     */
+    public synchronized boolean isFullScan() {
+        return mFullScan;
+    }
+
+    /**
+     * Append to the selection the condition for new records only.
+     *
+     * @param uri       The media store URI.
+     * @param selection The original selection, could be null.
+     * @return The selection used to query the media store URI.
+     */
+    public String getSelection(Uri uri, String selection) {
+        if (!isIncremental(uri)) {
+            return selection;
+        }
+        String markSelection = "(" + MediaStore.MediaColumns._ID + ">? OR "
+                + MediaStore.MediaColumns.DATE_ADDED + ">?)";
+        return selection != null ? "(" + selection + ") AND " + markSelection : markSelection;
+    }
+
+    /**
+     * Append to the selection arguments the values of the marks.
+     *
+     * @param uri           The media store URI.
+     * @param selectionArgs The original selection arguments, could be null.
+     * @return The selection arguments used to query the media store URI.
+     */
+    public String[] getSelectionArgs(Uri uri, String[] selectionArgs) {
+        if (!isIncremental(uri)) {
+            return selectionArgs;
+        }
+        Mark mark = getMark(uri);
+        int size = selectionArgs != null ? selectionArgs.length : 0;
+        String[] args = new String[size + 2];
+        if (size > 0) {
+            System.arraycopy(selectionArgs, 0, args, 0, size);
+        }
+        args[size] = String.valueOf(mark.id);
+        args[size + 1] = String.valueOf(mark.dateAdded);
+        return args;
+    }
+
+    /**
+     * Check if only the new records of the media store URI should be scanned.
+     *
+     * @param uri The media store URI.
+     * @return True if there is a saved mark and a full scan is not required.
+     */
+    private synchronized boolean isIncremental(Uri uri) {
+        return !mFullScan && getMark(uri).id > -1;
+    }
+
+    /**
+     * Update the marks with a scanned record.
+     *
+     * @param uri       The media store URI.
+     * @param id        The record ID.
+     * @param dateAdded The record DATE_ADDED value.
+     */
+    public synchronized void onRecordScanned(Uri uri, int id, long dateAdded) {
+        Mark mark = getMark(uri);
+        if (id > mark.scannedId) {
+            mark.scannedId = id;
+        }
+        if (dateAdded > mark.scannedDateAdded) {
+            mark.scannedDateAdded = dateAdded;
+        }
+    }
+
+    /**
+     * Register a record which should be renamed, the record remains pending until it is
+     * successfully renamed.
+     *
+     * @param uri The media store URI.
+     * @param id  The record ID.
+     */
+    public synchronized void addPending(Uri uri, int id) {
+        Set<Integer> pending = mPending.get(uri);
+        if (pending == null) {
+            pending = new TreeSet<>();
+            mPending.put(uri, pending);
+        }
+        pending.add(id);
+    }
+
+    /**
+     * Remove a successfully renamed record from the pending records.
+     *
+     * @param uri The media store URI.
+     * @param id  The record ID.
+     */
+    public synchronized void removePending(Uri uri, int id) {
+        Set<Integer> pending = mPending.get(uri);
+        if (pending != null) {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     * Save the new marks. The ID mark is kept below the lowest not renamed record, so that
+     * record is scanned again next time. After a full scan the next scans are incremental.
+     */
+    public synchronized void save() {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<Uri, Mark> entry : mMarks.entrySet()) {
+            Mark mark = entry.getValue();
+            int id = Math.max(mark.id, mark.scannedId);
+            long dateAdded = Math.max(mark.dateAdded, mark.scannedDateAdded);
+            Set<Integer> pending = mPending.get(entry.getKey());
+            if (pending != null && !pending.isEmpty()) {
+                id = Math.min(id, ((TreeSet<Integer>) pending).first() - 1);
+            }
+            mark.id = id;
+            mark.dateAdded = dateAdded;
+            String key = entry.getKey().toString();
+            editor.putInt(key + KEY_ID_SUFFIX, id);
+            editor.putLong(key + KEY_DATE_SUFFIX, dateAdded);
+        }
+        if (mFullScan) {
+            editor.putLong(KEY_LAST_FULL_SCAN, System.currentTimeMillis());
+            mFullScan = false;
+        }
+        editor.apply();
+    }
+
+    /**
+     * Obtain the mark for a media store URI.
+     *
+     * @param uri The media store URI.
+     * @return The mark of the URI.
+     */
+    private synchronized Mark getMark(Uri uri) {
+        Mark mark = mMarks.get(uri);
+        if (mark == null) {
+            String key = uri.toString();
+            mark = new Mark(mPreferences.getInt(key + KEY_ID_SUFFIX, -1),
+                    mPreferences.getLong(key + KEY_DATE_SUFFIX, -1));
+            mMarks.put(uri, mark);
+        }
+        return mark;
+    }
+
+    /**
+     * The saved and the currently scanned marks of a media store URI.
+     */
+    private static class Mark {
+        int id;
+        long dateAdded;
+        int scannedId = -1;
+        long scannedDateAdded = -1;
+
+        Mark(int id, long dateAdded) {
+            this.id = id;
+            this.dateAdded = dateAdded;
+        }
+    }
+}
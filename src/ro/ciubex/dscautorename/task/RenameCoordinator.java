@@ -0,0 +1,405 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import ro.ciubex.dscautorename.DSCApplication;
+
+/**
+ * Coordinate the rename runs, only one run is active at a time and the requests received while a
+ * run is active are folded into it as new passes. The state is changed only under a lock, so a
+ * request is never lost between the last pass of a run and the end of the run: the run remains
+ * active until it is finished, and the requests received after its last pass launch a new run
+ * when it is finished.
+ * <p>
+ * Each run has a completion future which is done when the run is finished, the callers can wait
+ * on it instead of polling the run state.
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public class RenameCoordinator {
+    private final static String TAG = RenameCoordinator.class.getName();
+    /**
+     * The files reported by the triggers are renamed directly, but a full scan is still done
+     * periodically, to reconcile the files which were not reported.
+     */
+    private static final long FULL_SCAN_INTERVAL = 60 * 60 * 1000L;
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_STARTING = 1;
+    private static final int STATE_RUNNING = 2;
+
+    private final DSCApplication mApplication;
+    private final Handler mMainHandler;
+    private final Object mLock = new Object();
+    private int mState = STATE_IDLE;
+    private RenameCompletion mCompletion;
+    /**
+     * True after the last pass of the active run, while the run is finishing its work.
+     */
+    private boolean mFinishing;
+    private RenameCompletion mNextCompletion;
+    private Launcher mNextLauncher;
+    private final Set<Uri> mSelectedFileUris = new LinkedHashSet<>();
+    private final Set<Uri> mPendingFileUris = new LinkedHashSet<>();
+    private boolean mFullScanRequested;
+    private long mLastFullScanTime;
+    private volatile boolean mCanceled;
+
+    /**
+     * Start a new rename run.
+     */
+    public interface Launcher {
+        /**
+         * Launch the rename run, the run should call onRunStarted(). The launcher is invoked on
+         * the main thread.
+         *
+         * @return False if the run could not be launched.
+         */
+        boolean launch();
+    }
+
+    /**
+     * The work of a rename pass.
+     */
+    public static class RenamePass {
+        private final List<Uri> mFileUris;
+
+        RenamePass(List<Uri> fileUris) {
+            mFileUris = fileUris;
+        }
+
+        /**
+         * Obtain the files to be renamed.
+         *
+         * @return The file URIs to be renamed, or null if a full scan is required.
+         */
+        public List<Uri> getFileUris() {
+            return mFileUris;
+        }
+    }
+
+    public RenameCoordinator(DSCApplication application) {
+        mApplication = application;
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Submit a rename request. If no run is active the launcher is invoked, otherwise the
+     * request is renamed by the active run.
+     *
+     * @param fileUris The files to be renamed, or null for a full scan.
+     * @param selected True if the files were selected by the user, those files are renamed
+     *                 in a separate pass, before the other requests. The selected files
+     *                 should still be located on the scanned folders.
+     * @param launcher Used to start a new run.
+     * @return The completion of the run which will rename the request.
+     */
+    public Future<Integer> submit(List<Uri> fileUris, boolean selected, Launcher launcher) {
+        RenameCompletion completion;
+        boolean launch = false;
+        synchronized (mLock) {
+            if (fileUris == null || fileUris.isEmpty()) {
+                mFullScanRequested = true;
+            } else if (selected) {
+                mSelectedFileUris.addAll(fileUris);
+            } else {
+                mPendingFileUris.addAll(fileUris);
+            }
+            if (mState == STATE_IDLE) {
+                mState = STATE_STARTING;
+                mCompletion = new RenameCompletion();
+                completion = mCompletion;
+                launch = true;
+            } else if (mFinishing || mCanceled) {
+                // the active run has no more passes, the request is renamed by the next run
+                if (mNextCompletion == null) {
+                    mNextCompletion = new RenameCompletion();
+                }
+                if (mNextLauncher == null || selected) {
+                    mNextLauncher = launcher;
+                }
+                completion = mNextCompletion;
+            } else {
+                completion = mCompletion;
+            }
+        }
+        if (launch) {
+            launch(completion, launcher);
+        } else {
+            mApplication.logD(TAG, "Rename request added to the active run.");
+        }
+        return completion;
+    }
+
+    /**
+     * Launch a new run on the main thread, the launchers are starting async tasks and services.
+     * If the run could not be launched it is finished.
+     *
+     * @param completion The completion of the new run.
+     * @param launcher   Used to start the new run.
+     */
+    private void launch(final RenameCompletion completion, final Launcher launcher) {
+        mApplication.logD(TAG, "Launch a new rename run.");
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean launched = false;
+                try {
+                    launched = launcher.launch();
+                } catch (RuntimeException e) {
+                    mApplication.logE(TAG, "Launch RuntimeException: " + e.getMessage(), e);
+                } finally {
+                    if (!launched) {
+                        mApplication.logE(TAG, "The rename run could not be launched.");
+                        finishRun(completion, 0);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the rename run when it is started.
+     *
+     * @return The completion of the run, or null if there is no launched run waiting to start,
+     * in this case the run should stop.
+     */
+    public Future<Integer> onRunStarted() {
+        synchronized (mLock) {
+            if (mState != STATE_STARTING) {
+                return null;
+            }
+            mState = STATE_RUNNING;
+            mFinishing = false;
+            return mCompletion;
+        }
+    }
+
+    /**
+     * Obtain the next pass of the active run. If there is nothing to rename or the run was
+     * canceled, the run remains active until finishRun() is called, the new requests are renamed
+     * by a new run launched after that.
+     *
+     * @return The next pass, or null if the run should stop.
+     */
+    public RenamePass nextPass() {
+        synchronized (mLock) {
+            if (mState != STATE_RUNNING || mFinishing) {
+                return null;
+            }
+            if (mCanceled) {
+                mFinishing = true;
+                return null;
+            }
+            List<Uri> fileUris;
+            if (!mSelectedFileUris.isEmpty()) {
+                // the user selected files are renamed in a separate pass
+                fileUris = new ArrayList<>(mSelectedFileUris);
+                mSelectedFileUris.clear();
+                return new RenamePass(fileUris);
+            }
+            if (!mFullScanRequested && mPendingFileUris.isEmpty()) {
+                mFinishing = true;
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            if (!mFullScanRequested && now - mLastFullScanTime < FULL_SCAN_INTERVAL) {
+                fileUris = new ArrayList<>(mPendingFileUris);
+            } else {
+                fileUris = null;
+                mLastFullScanTime = now;
+            }
+            mFullScanRequested = false;
+            mPendingFileUris.clear();
+            return new RenamePass(fileUris);
+        }
+    }
+
+    /**
+     * Called by the rename run when it is finished, after all its work is done. If requests were
+     * received after the last pass of the run, a new run is launched for them. If the run was
+     * stopped without its last pass, the pending requests are kept for the next run.
+     *
+     * @param completion The completion of the run.
+     * @param count      Number of renamed files.
+     */
+    public void finishRun(Future<Integer> completion, int count) {
+        RenameCompletion nextCompletion = null;
+        Launcher nextLauncher = null;
+        synchronized (mLock) {
+            if (mCompletion == completion && mState != STATE_IDLE) {
+                nextCompletion = mNextCompletion;
+                nextLauncher = mNextLauncher;
+                endRun();
+                if (nextCompletion != null) {
+                    mState = STATE_STARTING;
+                    mCompletion = nextCompletion;
+                }
+            }
+        }
+        if (completion instanceof RenameCompletion) {
+            ((RenameCompletion) completion).complete(count);
+        }
+        if (nextCompletion != null) {
+            launch(nextCompletion, nextLauncher);
+        }
+    }
+
+    /**
+     * Mark the active run as finished, should be called under the lock.
+     */
+    private void endRun() {
+        mState = STATE_IDLE;
+        mCompletion = null;
+        mFinishing = false;
+        mNextCompletion = null;
+        mNextLauncher = null;
+        mCanceled = false;
+    }
+
+    /**
+     * Drop all pending requests, should be called under the lock.
+     */
+    private void clearRequests() {
+        mSelectedFileUris.clear();
+        mPendingFileUris.clear();
+        mFullScanRequested = false;
+    }
+
+    /**
+     * Check if a rename run is active.
+     *
+     * @return True if a rename run is launched or running.
+     */
+    public boolean isRunning() {
+        synchronized (mLock) {
+            return mState != STATE_IDLE;
+        }
+    }
+
+    /**
+     * Check if the active run was canceled.
+     *
+     * @return True if the active run should stop.
+     */
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Cancel the active run, if any.
+     *
+     * @return True if a run was active.
+     */
+    public boolean cancel() {
+        synchronized (mLock) {
+            if (mState == STATE_IDLE) {
+                return false;
+            }
+            mApplication.logD(TAG, "Cancel the active rename run.");
+            mCanceled = true;
+            clearRequests();
+            if (mCompletion != null) {
+                mCompletion.markCancelled();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The completion of a rename run, the result is the number of renamed files. A canceled
+     * completion is done at once and its result is not available.
+     */
+    private class RenameCompletion implements Future<Integer> {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private volatile int mCount;
+        private volatile boolean mCancelled;
+
+        void complete(int count) {
+            mCount = count;
+            mLatch.countDown();
+        }
+
+        /**
+         * Mark this completion as canceled, the threads waiting for the result are released.
+         */
+        void markCancelled() {
+            mCancelled = true;
+            mLatch.countDown();
+        }
+
+        /**
+         * Cancel the run, only if this is the active run.
+         *
+         * @param mayInterruptIfRunning Not used, the run is never interrupted.
+         * @return True if the run was canceled.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (mLock) {
+                return mCompletion == this && !mCancelled && RenameCoordinator.this.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mLatch.getCount() == 0;
+        }
+
+        @Override
+        public Integer get() throws InterruptedException {
+            mLatch.await();
+            return getResult();
+        }
+
+        @Override
+        public Integer get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if (!mLatch.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private Integer getResult() {
+            if (mCancelled) {
+                throw new CancellationException();
+            }
+            return mCount;
+        }
+    }
+}
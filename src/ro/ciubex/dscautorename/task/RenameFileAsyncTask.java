@@ -19,11 +19,10 @@
 package ro.ciubex.dscautorename.task;
 
 import android.content.Context;
-import android.net.Uri;
 import android.os.AsyncTask;
 
 import java.lang.ref.WeakReference;
-import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import ro.ciubex.dscautorename.DSCApplication;
 import ro.ciubex.dscautorename.R;
@@ -35,11 +34,13 @@ import ro.ciubex.dscautorename.R;
  */
 public class RenameFileAsyncTask extends AsyncTask<Void, Integer, Integer>
 		implements FileRenameThread.Listener {
+	private static final String TAG = RenameFileAsyncTask.class.getName();
 	private final WeakReference<Listener> mListener;
+	private final DSCApplication mApplication;
 	private Context mContext;
 	private FileRenameThread mFileRenameThread;
-	private boolean mFinished;
-	private int mCount;
+	private final CountDownLatch mFinished = new CountDownLatch(1);
+	private volatile int mCount;
 
 	public interface Listener {
 		void onTaskStarted();
@@ -51,9 +52,11 @@ public class RenameFileAsyncTask extends AsyncTask<Void, Integer, Integer>
 		boolean isFinishing();
 	}
 
-	public RenameFileAsyncTask(DSCApplication application, Listener listener, boolean noDelay, List<Uri> fileUris) {
-		mFileRenameThread = new FileRenameThread(application, this, noDelay, fileUris);
+	public RenameFileAsyncTask(DSCApplication application, Listener listener, boolean noDelay) {
+		// the rename tasks are launched only for the user requests
+		mFileRenameThread = new FileRenameThread(application, this, noDelay, true);
 		this.mListener = new WeakReference<>(listener);
+		mApplication = application;
 		mContext = application.getApplicationContext();
 	}
 
@@ -64,8 +67,19 @@ public class RenameFileAsyncTask extends AsyncTask<Void, Integer, Integer>
 	protected void onPreExecute() {
 		super.onPreExecute();
 		Listener listener = mListener.get();
+		// the thread is started even if the listener is finishing, the launched run is waiting
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mFileRenameThread.run();
+				} finally {
+					// the end of the run is not reported if the listener is finishing
+					mFinished.countDown();
+				}
+			}
+		}).start();
 		if (listener != null && !listener.isFinishing()) {
-			new Thread(mFileRenameThread).start();
 			listener.onTaskStarted();
 		}
 	}
@@ -119,12 +133,10 @@ public class RenameFileAsyncTask extends AsyncTask<Void, Integer, Integer>
 	 */
 	@Override
 	protected Integer doInBackground(Void... params) {
-		while(!mFinished) {
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+		try {
+			mFinished.await();
+		} catch (InterruptedException e) {
+			mApplication.logE(TAG, "doInBackground InterruptedException: " + e.getMessage(), e);
 		}
 		return mCount;
 	}
@@ -142,7 +154,7 @@ public class RenameFileAsyncTask extends AsyncTask<Void, Integer, Integer>
 	@Override
 	public void onThreadFinished(int count) {
 		mCount = count;
-		mFinished = true;
+		mFinished.countDown();
 	}
 
 	@Override
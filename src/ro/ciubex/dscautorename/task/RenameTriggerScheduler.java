@@ -0,0 +1,133 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.task;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ro.ciubex.dscautorename.DSCApplication;
+
+/**
+ * Collect the rename triggers from all event sources and launch a single rename task for a burst
+ * of events. The task is launched after a quiet period without new events, but not later than
+ * the maximum latency from the first event. The file URIs are deduplicated and any event without
+ * a precise file URI requires a full scan.
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public class RenameTriggerScheduler {
+    private final static String TAG = RenameTriggerScheduler.class.getName();
+    private static final long QUIET_PERIOD = 1000;
+    private static final long MAX_LATENCY = 5000;
+
+    private final DSCApplication mApplication;
+    private final Handler mHandler;
+    private final Set<Uri> mFileUris = new LinkedHashSet<>();
+    private boolean mFullScan;
+    private boolean mForce;
+    private int mTriggerCount;
+    private long mFirstTriggerTime;
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public RenameTriggerScheduler(DSCApplication application) {
+        mApplication = application;
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Register a rename trigger.
+     *
+     * @param fileUris The affected file URIs, or null if the affected files are not known.
+     * @param force    True if the rename should be done even if the service is disabled.
+     */
+    public synchronized void trigger(List<Uri> fileUris, boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (mTriggerCount == 0) {
+            mFirstTriggerTime = now;
+        }
+        mTriggerCount++;
+        if (fileUris == null || fileUris.isEmpty()) {
+            mFullScan = true;
+        } else {
+            for (Uri uri : fileUris) {
+                if (isFileUri(uri)) {
+                    mFileUris.add(uri);
+                } else {
+                    mFullScan = true;
+                }
+            }
+        }
+        mForce |= force;
+        long delay = Math.min(QUIET_PERIOD, mFirstTriggerTime + MAX_LATENCY - now);
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, Math.max(0, delay));
+    }
+
+    /**
+     * Check if the URI identifies a single file: a file scheme URI or a content URI ending
+     * with the media ID.
+     *
+     * @param uri The URI to check.
+     * @return True if the URI identifies a single file.
+     */
+    private boolean isFileUri(Uri uri) {
+        if ("file".equals(uri.getScheme())) {
+            return true;
+        }
+        String id = uri.getLastPathSegment();
+        return "content".equals(uri.getScheme()) && id != null && TextUtils.isDigitsOnly(id);
+    }
+
+    /**
+     * Launch the rename task for all collected triggers.
+     */
+    private void flush() {
+        List<Uri> fileUris;
+        boolean force;
+        int count;
+        synchronized (this) {
+            fileUris = mFullScan ? null : new ArrayList<>(mFileUris);
+            force = mForce;
+            count = mTriggerCount;
+            mFileUris.clear();
+            mFullScan = false;
+            mForce = false;
+            mTriggerCount = 0;
+        }
+        if (count > 0) {
+            mApplication.logD(TAG, "Launch rename for " + count + " triggers, files: "
+                    + (fileUris != null ? fileUris.size() : "all"));
+            mApplication.launchAutoRenameTask(null, false, fileUris, force);
+        }
+    }
+}
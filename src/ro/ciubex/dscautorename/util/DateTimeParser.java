@@ -0,0 +1,127 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Parse the date and time values read from the media metadata. This class does not depend on
+ * the Android framework, so it could be also used by the JVM benchmarks.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class DateTimeParser {
+
+	/**
+	 * Parse a string date time value in format yyyy:MM:dd HH:mm:ss to a date.
+	 *
+	 * @param dateTime Date time to be parsed.
+	 * @return The parsed date time.
+	 */
+	public static Date parseExifDateTimeString(String dateTime) {
+		String[] arr = dateTime.split(" ");
+		Date date = null;
+		if (arr.length == 2) {
+			String[] dateString = arr[0].split(":");
+			String[] timeString = arr[1].split(":");
+			if (dateString.length == 3 && timeString.length == 3) {
+				Calendar calendar = GregorianCalendar.getInstance();
+				calendar.set(Calendar.YEAR, parseToInt(dateString[0]));
+				calendar.set(Calendar.MONTH, parseToInt(dateString[1]) - 1);
+				calendar.set(Calendar.DAY_OF_MONTH, parseToInt(dateString[2]));
+				calendar.set(Calendar.HOUR_OF_DAY, parseToInt(timeString[0]));
+				calendar.set(Calendar.MINUTE, parseToInt(timeString[1]));
+				calendar.set(Calendar.SECOND, parseToInt(timeString[2]));
+				calendar.set(Calendar.MILLISECOND, 0);
+				date = calendar.getTime();
+			}
+		}
+		return date;
+	}
+
+	/**
+	 * Parse a string date time value in format yyyyMMddTHHmmss.zzzZ to a date.
+	 *
+	 * @param dateTime Date time to be parsed.
+	 * @return The parsed date time.
+	 */
+	public static Date parseMetadataDateTimeString(String dateTime) {
+		String[] arr = dateTime != null ? dateTime.split("\\.") : null;
+		Date date = null;
+		if (arr != null && arr.length > 1) {
+			String dateTimeString = arr[0];
+			int k, year;
+			if (dateTimeString.length() == 15) {
+				Calendar calendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("GMT"));
+				k = 0;
+				year = parseToInt(dateTimeString.substring(k, k + 4));
+				if (calendar.get(Calendar.YEAR) - year < 5) { // avoid possible wrong year
+					calendar.set(Calendar.YEAR, year);
+				}
+				k += 4;
+				calendar.set(Calendar.MONTH, parseToInt(dateTimeString.substring(k, k + 2)) - 1);
+				k += 2;
+				calendar.set(Calendar.DAY_OF_MONTH, parseToInt(dateTimeString.substring(k, k + 2)));
+				k += 3; // skip T
+				calendar.set(Calendar.HOUR_OF_DAY, parseToInt(dateTimeString.substring(k, k + 2)));
+				k += 2;
+				calendar.set(Calendar.MINUTE, parseToInt(dateTimeString.substring(k, k + 2)));
+				k += 2;
+				calendar.set(Calendar.SECOND, parseToInt(dateTimeString.substring(k, k + 2)));
+				calendar.set(Calendar.MILLISECOND, 0);
+				date = calendar.getTime();
+			}
+		}
+		return date;
+	}
+
+	/**
+	 * Convert a UTC time read from the media metadata to a date, checking the year in the same
+	 * way as parseMetadataDateTimeString.
+	 *
+	 * @param utcTime The UTC time in milliseconds.
+	 * @return The checked date time.
+	 */
+	public static Date getMetadataDate(long utcTime) {
+		Calendar calendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("GMT"));
+		int currentYear = calendar.get(Calendar.YEAR);
+		calendar.setTimeInMillis(utcTime);
+		if (currentYear - calendar.get(Calendar.YEAR) >= 5) { // avoid possible wrong year
+			calendar.set(Calendar.YEAR, currentYear);
+		}
+		return calendar.getTime();
+	}
+
+	/**
+	 * Parse a date field.
+	 *
+	 * @param value The field value.
+	 * @return The parsed value or -1 if can not be parsed.
+	 */
+	private static int parseToInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The names of the files from the folders used during a rename run. Each folder is listed only
+ * once, then the index is updated on every rename, so the name collisions can be resolved without
+ * checking each candidate name on the disk.
+ * <p>
+ * The index is case sensitive, the callers should still check the file on the disk before using
+ * a name which is not in the index.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class DirectoryNameIndex {
+	private final Map<String, Set<String>> mFolders = new HashMap<>();
+
+	/**
+	 * Check if a file name exists in a folder, the folder is listed first time is used.
+	 *
+	 * @param folder   The folder.
+	 * @param fileName The file name.
+	 * @return True if the file name exists in the index of the folder.
+	 */
+	public boolean contains(File folder, String fileName) {
+		Set<String> names = getNames(folder);
+		synchronized (names) {
+			return names.contains(fileName);
+		}
+	}
+
+	/**
+	 * Add a file name to a folder index, if the folder was already listed.
+	 *
+	 * @param folder   The folder.
+	 * @param fileName The file name.
+	 */
+	public void add(File folder, String fileName) {
+		Set<String> names = getLoadedNames(folder);
+		if (names != null) {
+			synchronized (names) {
+				names.add(fileName);
+			}
+		}
+	}
+
+	/**
+	 * Remove a file name from a folder index, if the folder was already listed.
+	 *
+	 * @param folder   The folder.
+	 * @param fileName The file name.
+	 */
+	public void remove(File folder, String fileName) {
+		Set<String> names = getLoadedNames(folder);
+		if (names != null) {
+			synchronized (names) {
+				names.remove(fileName);
+			}
+		}
+	}
+
+	/**
+	 * Update the index after a file was renamed or moved.
+	 *
+	 * @param oldFile The old file.
+	 * @param newFile The new file.
+	 */
+	public void onRenamed(File oldFile, File newFile) {
+		remove(oldFile.getParentFile(), oldFile.getName());
+		add(newFile.getParentFile(), newFile.getName());
+	}
+
+	/**
+	 * Obtain the names of an already listed folder.
+	 *
+	 * @param folder The folder.
+	 * @return The names of the folder or null if the folder was not listed.
+	 */
+	private Set<String> getLoadedNames(File folder) {
+		if (folder == null) {
+			return null;
+		}
+		synchronized (mFolders) {
+			return mFolders.get(folder.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Obtain the names of a folder, listing the folder if was not listed before.
+	 *
+	 * @param folder The folder.
+	 * @return The names of the folder.
+	 */
+	private Set<String> getNames(File folder) {
+		if (folder == null) {
+			return Collections.emptySet();
+		}
+		String path = folder.getAbsolutePath();
+		Set<String> names;
+		synchronized (mFolders) {
+			names = mFolders.get(path);
+		}
+		if (names == null) {
+			names = new HashSet<>();
+			String[] list = folder.list();
+			if (list != null) {
+				Collections.addAll(names, list);
+			}
+			synchronized (mFolders) {
+				Set<String> existing = mFolders.get(path);
+				if (existing != null) {
+					names = existing;
+				} else {
+					mFolders.put(path, names);
+				}
+			}
+		}
+		return names;
+	}
+}
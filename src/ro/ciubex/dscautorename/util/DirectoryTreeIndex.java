@@ -0,0 +1,232 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persisted index of the scanned folders. For each folder is saved the last modified time, the
+ * sub folders and the number of files matching the patterns. A folder which was not modified
+ * since the last scan and had no matching files does not need to be listed again, only its sub
+ * folders should be checked.
+ * <p>
+ * The index is invalidated when the file name patterns are changed.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class DirectoryTreeIndex {
+	private static final int VERSION = 1;
+	/**
+	 * Folders modified too close to the scan time are not trusted, because the modified time of
+	 * some file systems has a resolution of two seconds.
+	 */
+	private static final long MTIME_RESOLUTION = 2000;
+
+	private final File mIndexFile;
+	private final String mSignature;
+	private Map<String, Entry> mEntries;
+	private Map<String, Entry> mVisited;
+	private boolean mModified;
+
+	/**
+	 * The index data of a folder.
+	 */
+	public static class Entry {
+		final long lastModified;
+		final int matches;
+		final String[] folders;
+
+		Entry(long lastModified, int matches, String[] folders) {
+			this.lastModified = lastModified;
+			this.matches = matches;
+			this.folders = folders;
+		}
+
+		/**
+		 * Obtain the names of the sub folders.
+		 *
+		 * @return The sub folder names.
+		 */
+		public String[] getFolders() {
+			return folders;
+		}
+	}
+
+	/**
+	 * Create the index.
+	 *
+	 * @param indexFile The file where the index is saved.
+	 * @param signature A text describing the file name patterns, if it is changed the saved
+	 *                  index is not used.
+	 */
+	public DirectoryTreeIndex(File indexFile, String signature) {
+		mIndexFile = indexFile;
+		mSignature = signature;
+		mEntries = new HashMap<>();
+		mVisited = new HashMap<>();
+	}
+
+	/**
+	 * Load the saved index, if any.
+	 */
+	public void load() {
+		mEntries.clear();
+		if (!mIndexFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+			if (in.readInt() != VERSION || !mSignature.equals(in.readUTF())) {
+				mModified = true;
+				return;
+			}
+			int count = in.readInt();
+			String path;
+			long lastModified;
+			int matches, size;
+			String[] folders;
+			for (int i = 0; i < count; i++) {
+				path = in.readUTF();
+				lastModified = in.readLong();
+				matches = in.readInt();
+				size = in.readInt();
+				folders = new String[size];
+				for (int j = 0; j < size; j++) {
+					folders[j] = in.readUTF();
+				}
+				mEntries.put(path, new Entry(lastModified, matches, folders));
+			}
+		} catch (IOException e) {
+			mEntries.clear();
+			mModified = true;
+		} finally {
+			Utilities.doClose(in);
+		}
+	}
+
+	/**
+	 * Remove the folders which are not located on the provided volumes, used to drop the
+	 * folders of the unmounted volumes.
+	 *
+	 * @param volumePaths The paths of the mounted volumes.
+	 */
+	public void retainVolumes(List<String> volumePaths) {
+		Iterator<String> iterator = mEntries.keySet().iterator();
+		String path;
+		boolean mounted;
+		while (iterator.hasNext()) {
+			path = iterator.next();
+			mounted = false;
+			for (String volumePath : volumePaths) {
+				if (path.startsWith(volumePath)) {
+					mounted = true;
+					break;
+				}
+			}
+			if (!mounted) {
+				iterator.remove();
+				mModified = true;
+			}
+		}
+	}
+
+	/**
+	 * Obtain the index entry of an unchanged folder.
+	 *
+	 * @param folder       The folder.
+	 * @param lastModified The current last modified time of the folder.
+	 * @return The index entry if the folder was not changed and had no matching files,
+	 * otherwise null.
+	 */
+	public Entry getUnchanged(String folder, long lastModified) {
+		Entry entry = mEntries.get(folder);
+		if (entry != null && entry.lastModified == lastModified && entry.matches == 0) {
+			mVisited.put(folder, entry);
+			return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Save in the index the result of a folder listing.
+	 *
+	 * @param folder       The folder path.
+	 * @param lastModified The last modified time of the folder, read before the listing.
+	 * @param matches      Number of files matching the patterns.
+	 * @param folders      The sub folder names.
+	 */
+	public void put(String folder, long lastModified, int matches, List<String> folders) {
+		if (System.currentTimeMillis() - lastModified < MTIME_RESOLUTION) {
+			lastModified = -1;
+		}
+		mVisited.put(folder, new Entry(lastModified, matches, folders.toArray(new String[folders.size()])));
+		mModified = true;
+	}
+
+	/**
+	 * Save the index, only the folders visited since the last save are kept, so the deleted
+	 * folders are removed from the index.
+	 */
+	public void save() {
+		if (!mModified && mVisited.size() == mEntries.size()) {
+			mVisited = new HashMap<>();
+			return;
+		}
+		mEntries = mVisited;
+		mVisited = new HashMap<>();
+		mModified = false;
+		DataOutputStream out = null;
+		try {
+			File parent = mIndexFile.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mIndexFile)));
+			out.writeInt(VERSION);
+			out.writeUTF(mSignature);
+			out.writeInt(mEntries.size());
+			for (Map.Entry<String, Entry> item : mEntries.entrySet()) {
+				Entry entry = item.getValue();
+				out.writeUTF(item.getKey());
+				out.writeLong(entry.lastModified);
+				out.writeInt(entry.matches);
+				out.writeInt(entry.folders.length);
+				for (String folder : entry.folders) {
+					out.writeUTF(folder);
+				}
+			}
+		} catch (IOException e) {
+			mIndexFile.delete();
+		} finally {
+			Utilities.doClose(out);
+		}
+	}
+}
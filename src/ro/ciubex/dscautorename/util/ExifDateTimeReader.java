@@ -0,0 +1,243 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read the EXIF date and time of a JPEG file without parsing the whole EXIF structure. Only the
+ * APP1 segment is read, then only the IFD0 and the Exif sub IFD are walked to obtain the DateTime
+ * and the DateTimeOriginal tags.
+ * <p>
+ * Like the ExifInterface, the DateTime tag is used and if it is missing the DateTimeOriginal tag.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class ExifDateTimeReader {
+	/**
+	 * The segments before the APP1 segment are looked only in the first bytes of the file.
+	 */
+	private static final int MAX_SCAN_BYTES = 128 * 1024;
+	private static final int MARKER_SOI = 0xD8;
+	private static final int MARKER_APP1 = 0xE1;
+	private static final int MARKER_SOS = 0xDA;
+	private static final int MARKER_EOI = 0xD9;
+	private static final int TAG_DATETIME = 0x0132;
+	private static final int TAG_EXIF_IFD_POINTER = 0x8769;
+	private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+	private static final int TYPE_ASCII = 2;
+	private static final int TYPE_LONG = 4;
+	private static final int IFD_ENTRY_SIZE = 12;
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * Read the EXIF date and time of a JPEG file.
+	 *
+	 * @param file The JPEG file.
+	 * @return The date and time in the EXIF format, yyyy:MM:dd HH:mm:ss, or null if the file
+	 * does not have an EXIF date.
+	 * @throws IOException If the file is not a JPEG file or the EXIF data could not be parsed.
+	 */
+	public static String readDateTime(File file) throws IOException {
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(file);
+			FileChannel channel = inputStream.getChannel();
+			ByteBuffer tiff = readExifSegment(channel);
+			return tiff != null ? readDateTime(tiff) : null;
+		} finally {
+			Utilities.doClose(inputStream);
+		}
+	}
+
+	/**
+	 * Look for the EXIF APP1 segment and read its TIFF data.
+	 *
+	 * @param channel The file channel.
+	 * @return The TIFF data of the EXIF segment or null if there is no EXIF segment.
+	 * @throws IOException If the file is not a JPEG file.
+	 */
+	private static ByteBuffer readExifSegment(FileChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(10);
+		long position = 0;
+		readFully(channel, header, position, 2);
+		if ((header.get(0) & 0xFF) != 0xFF || (header.get(1) & 0xFF) != MARKER_SOI) {
+			throw new IOException("Not a JPEG file");
+		}
+		position = 2;
+		int marker, length;
+		while (position < MAX_SCAN_BYTES) {
+			readFully(channel, header, position, 4);
+			if ((header.get(0) & 0xFF) != 0xFF) {
+				throw new IOException("Invalid JPEG marker at " + position);
+			}
+			marker = header.get(1) & 0xFF;
+			if (marker == 0xFF) {
+				// fill byte
+				position++;
+				continue;
+			}
+			if (marker == MARKER_SOS || marker == MARKER_EOI) {
+				return null;
+			}
+			length = header.getShort(2) & 0xFFFF;
+			if (length < 2) {
+				throw new IOException("Invalid JPEG segment length at " + position);
+			}
+			if (marker == MARKER_APP1 && length > 8) {
+				readFully(channel, header, position + 4, 6);
+				if (header.get(0) == 'E' && header.get(1) == 'x' && header.get(2) == 'i'
+						&& header.get(3) == 'f' && header.get(4) == 0 && header.get(5) == 0) {
+					ByteBuffer tiff = ByteBuffer.allocate(length - 8);
+					readFully(channel, tiff, position + 10, tiff.capacity());
+					return tiff;
+				}
+			}
+			position += 2 + length;
+		}
+		throw new IOException("EXIF segment not found in the first " + MAX_SCAN_BYTES + " bytes");
+	}
+
+	/**
+	 * Read exactly the requested number of bytes, starting from the beginning of the buffer.
+	 *
+	 * @param channel  The file channel.
+	 * @param buffer   The buffer where the bytes are read.
+	 * @param position The file position.
+	 * @param size     The number of bytes to read.
+	 * @throws IOException If the end of file is reached.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int size)
+			throws IOException {
+		buffer.clear();
+		buffer.limit(size);
+		int count;
+		while (buffer.hasRemaining()) {
+			count = channel.read(buffer, position + buffer.position());
+			if (count < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	/**
+	 * Walk the IFD0 and the Exif sub IFD to obtain the date and time.
+	 *
+	 * @param tiff The TIFF data.
+	 * @return The date and time or null.
+	 * @throws IOException If the TIFF data could not be parsed.
+	 */
+	private static String readDateTime(ByteBuffer tiff) throws IOException {
+		if (tiff.capacity() < 8) {
+			throw new IOException("Invalid TIFF header");
+		}
+		int byteOrder = tiff.getShort(0);
+		if (byteOrder == 0x4949) {
+			tiff.order(ByteOrder.LITTLE_ENDIAN);
+		} else if (byteOrder == 0x4D4D) {
+			tiff.order(ByteOrder.BIG_ENDIAN);
+		} else {
+			throw new IOException("Invalid TIFF byte order");
+		}
+		if (tiff.getShort(2) != 0x002A) {
+			throw new IOException("Invalid TIFF header");
+		}
+		int ifd0 = getOffset(tiff, 4);
+		int entry = findEntry(tiff, ifd0, TAG_DATETIME);
+		String dateTime = entry != -1 ? readAscii(tiff, entry) : null;
+		if (dateTime == null) {
+			entry = findEntry(tiff, ifd0, TAG_EXIF_IFD_POINTER);
+			if (entry != -1 && (tiff.getShort(entry + 2) & 0xFFFF) == TYPE_LONG) {
+				entry = findEntry(tiff, getOffset(tiff, entry + 8), TAG_DATETIME_ORIGINAL);
+				if (entry != -1) {
+					dateTime = readAscii(tiff, entry);
+				}
+			}
+		}
+		return dateTime;
+	}
+
+	/**
+	 * Look for a tag in an IFD.
+	 *
+	 * @param tiff   The TIFF data.
+	 * @param offset The IFD offset.
+	 * @param tag    The tag to look for.
+	 * @return The offset of the IFD entry or -1 if the tag is not present.
+	 * @throws IOException If the IFD is outside of the TIFF data.
+	 */
+	private static int findEntry(ByteBuffer tiff, int offset, int tag) throws IOException {
+		checkRange(tiff, offset, 2);
+		int count = tiff.getShort(offset) & 0xFFFF;
+		int entry = offset + 2;
+		checkRange(tiff, entry, count * IFD_ENTRY_SIZE);
+		for (int i = 0; i < count; i++, entry += IFD_ENTRY_SIZE) {
+			if ((tiff.getShort(entry) & 0xFFFF) == tag) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Read the value of an ASCII IFD entry.
+	 *
+	 * @param tiff  The TIFF data.
+	 * @param entry The IFD entry offset.
+	 * @return The value, up to the first NUL character, or null if it is empty or not ASCII.
+	 * @throws IOException If the value is outside of the TIFF data.
+	 */
+	private static String readAscii(ByteBuffer tiff, int entry) throws IOException {
+		if ((tiff.getShort(entry + 2) & 0xFFFF) != TYPE_ASCII) {
+			return null;
+		}
+		int count = tiff.getInt(entry + 4);
+		if (count <= 0) {
+			return null;
+		}
+		int offset = count > 4 ? getOffset(tiff, entry + 8) : entry + 8;
+		checkRange(tiff, offset, count);
+		int length = 0;
+		while (length < count && tiff.get(offset + length) != 0) {
+			length++;
+		}
+		if (length == 0) {
+			return null;
+		}
+		return new String(tiff.array(), tiff.arrayOffset() + offset, length, ASCII);
+	}
+
+	private static int getOffset(ByteBuffer tiff, int index) throws IOException {
+		int offset = tiff.getInt(index);
+		checkRange(tiff, offset, 0);
+		return offset;
+	}
+
+	private static void checkRange(ByteBuffer tiff, int offset, int size) throws IOException {
+		if (offset < 0 || size < 0 || offset > tiff.capacity() - size) {
+			throw new IOException("Invalid TIFF offset: " + offset);
+		}
+	}
+}
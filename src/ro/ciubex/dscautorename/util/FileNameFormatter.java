@@ -0,0 +1,377 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A file name pattern compiled once and used to format many dates. The numeric pattern fields
+ * are written directly from the epoch milliseconds into the provided buffer, without creating
+ * Date or Calendar objects. Patterns with text fields (month names, day names, AM/PM, time zone)
+ * are formatted using SimpleDateFormat, so the result is always the same as SimpleDateFormat.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Claudiu Ciobotariu
+ *
+ */
+public class FileNameFormatter {
+    private static final long DAY_MILLIS = 86400000L;
+    /**
+     * 1600-01-01T00:00:00Z, older dates are formatted by SimpleDateFormat because of the Julian
+     * calendar cutover.
+     */
+    private static final long MIN_FAST_MILLIS = -11676096000000L;
+    private static final String FAST_FIELDS = "yMdHhkKmsSD";
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+    private static final long[] PROBE_MILLIS = {0L, 1488603967089L, 946684799999L, 4102444800000L};
+
+    private final String mPattern;
+    private final TimeZone mTimeZone;
+    private final SimpleDateFormat mFallbackFormat;
+    private final boolean mFastPath;
+    private final char mZeroDigit;
+    private final char[] mFields;
+    private final int[] mCounts;
+    private final String[] mLiterals;
+    private volatile DayOffset mDayOffset;
+
+    /**
+     * Compile the file name pattern, using the default time zone.
+     *
+     * @param pattern The SimpleDateFormat pattern.
+     * @param locale  The locale used to format the dates.
+     * @throws IllegalArgumentException If the pattern is not valid.
+     */
+    public FileNameFormatter(String pattern, Locale locale) {
+        this(pattern, locale, TimeZone.getDefault());
+    }
+
+    /**
+     * Compile the file name pattern.
+     *
+     * @param pattern  The SimpleDateFormat pattern.
+     * @param locale   The locale used to format the dates.
+     * @param timeZone The time zone used to format the dates.
+     * @throws IllegalArgumentException If the pattern is not valid.
+     */
+    public FileNameFormatter(String pattern, Locale locale, TimeZone timeZone) {
+        mPattern = pattern;
+        mTimeZone = timeZone;
+        mFallbackFormat = new SimpleDateFormat(pattern, locale);
+        mFallbackFormat.setTimeZone(timeZone);
+        List<Character> fields = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        List<String> literals = new ArrayList<>();
+        boolean fastPath = parsePattern(pattern, fields, counts, literals);
+        int size = fields.size();
+        mFields = new char[size];
+        mCounts = new int[size];
+        mLiterals = literals.toArray(new String[size]);
+        for (int i = 0; i < size; i++) {
+            mFields[i] = fields.get(i);
+            mCounts[i] = counts.get(i);
+        }
+        char zeroDigit = '0';
+        NumberFormat numberFormat = mFallbackFormat.getNumberFormat();
+        if (numberFormat instanceof DecimalFormat) {
+            zeroDigit = ((DecimalFormat) numberFormat).getDecimalFormatSymbols().getZeroDigit();
+        } else {
+            fastPath = false;
+        }
+        mZeroDigit = zeroDigit;
+        mFastPath = fastPath && isSameAsFallback();
+    }
+
+    /**
+     * Split the pattern in fields and literals.
+     *
+     * @param pattern  The SimpleDateFormat pattern.
+     * @param fields   List of field letters, zero for literals.
+     * @param counts   List of field letters count.
+     * @param literals List of literal texts, null for fields.
+     * @return True if all fields can be formatted without SimpleDateFormat.
+     */
+    private static boolean parsePattern(String pattern, List<Character> fields, List<Integer> counts,
+                                        List<String> literals) {
+        boolean fastPath = true;
+        StringBuilder literal = new StringBuilder();
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i += 2;
+                    continue;
+                }
+                i++;
+                while (i < length) {
+                    c = pattern.charAt(i);
+                    if (c == '\'') {
+                        if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+                            literal.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(c);
+                    i++;
+                }
+                i++;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int count = 1;
+                while (i + count < length && pattern.charAt(i + count) == c) {
+                    count++;
+                }
+                if (FAST_FIELDS.indexOf(c) < 0 || (c == 'M' && count > 2)) {
+                    fastPath = false;
+                }
+                if (literal.length() > 0) {
+                    addToken((char) 0, 0, literal.toString(), fields, counts, literals);
+                    literal.setLength(0);
+                }
+                addToken(c, count, null, fields, counts, literals);
+                i += count;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            addToken((char) 0, 0, literal.toString(), fields, counts, literals);
+        }
+        return fastPath;
+    }
+
+    private static void addToken(char field, int count, String literal, List<Character> fields,
+                                 List<Integer> counts, List<String> literals) {
+        fields.add(field);
+        counts.add(count);
+        literals.add(literal);
+    }
+
+    /**
+     * Compare the fast formatting with SimpleDateFormat for some dates, to detect locales with
+     * special number formatting.
+     *
+     * @return True if the results are the same.
+     */
+    private boolean isSameAsFallback() {
+        StringBuilder sb = new StringBuilder();
+        for (long millis : PROBE_MILLIS) {
+            sb.setLength(0);
+            formatFast(millis, sb);
+            if (!sb.toString().equals(mFallbackFormat.format(new Date(millis)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Obtain the compiled pattern.
+     *
+     * @return The pattern.
+     */
+    public String getPattern() {
+        return mPattern;
+    }
+
+    /**
+     * Format the provided date.
+     *
+     * @param millis The date as milliseconds since the epoch.
+     * @return The formatted date.
+     */
+    public String format(long millis) {
+        StringBuilder sb = new StringBuilder(mPattern.length() + 8);
+        format(millis, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the formatted date to the provided buffer.
+     *
+     * @param millis The date as milliseconds since the epoch.
+     * @param sb     The buffer where the formatted date is appended.
+     */
+    public void format(long millis, StringBuilder sb) {
+        if (mFastPath && millis >= MIN_FAST_MILLIS) {
+            formatFast(millis, sb);
+        } else {
+            synchronized (mFallbackFormat) {
+                sb.append(mFallbackFormat.format(new Date(millis)));
+            }
+        }
+    }
+
+    /**
+     * Format the date without SimpleDateFormat, only numeric fields are supported.
+     *
+     * @param millis The date as milliseconds since the epoch.
+     * @param sb     The buffer where the formatted date is appended.
+     */
+    private void formatFast(long millis, StringBuilder sb) {
+        long local = millis + getOffset(millis);
+        long days = floorDiv(local, DAY_MILLIS);
+        int millisOfDay = (int) (local - days * DAY_MILLIS);
+        // convert the days since epoch to the civil date, proleptic Gregorian calendar
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYearMar = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYearMar + 2) / 153;
+        int day = (int) (dayOfYearMar - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        int hour = millisOfDay / 3600000;
+        int minute = (millisOfDay / 60000) % 60;
+        int second = (millisOfDay / 1000) % 60;
+        int millisecond = millisOfDay % 1000;
+        int count;
+        for (int i = 0; i < mFields.length; i++) {
+            count = mCounts[i];
+            switch (mFields[i]) {
+                case 0:
+                    sb.append(mLiterals[i]);
+                    break;
+                case 'y':
+                    if (count == 2) {
+                        appendNumber(sb, year % 100, 2);
+                    } else {
+                        appendNumber(sb, year, count);
+                    }
+                    break;
+                case 'M':
+                    appendNumber(sb, month, count);
+                    break;
+                case 'd':
+                    appendNumber(sb, day, count);
+                    break;
+                case 'D':
+                    appendNumber(sb, getDayOfYear(year, month, day), count);
+                    break;
+                case 'H':
+                    appendNumber(sb, hour, count);
+                    break;
+                case 'h':
+                    appendNumber(sb, hour % 12 == 0 ? 12 : hour % 12, count);
+                    break;
+                case 'k':
+                    appendNumber(sb, hour == 0 ? 24 : hour, count);
+                    break;
+                case 'K':
+                    appendNumber(sb, hour % 12, count);
+                    break;
+                case 'm':
+                    appendNumber(sb, minute, count);
+                    break;
+                case 's':
+                    appendNumber(sb, second, count);
+                    break;
+                case 'S':
+                    appendNumber(sb, millisecond, count);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Obtain the time zone offset, the offset is cached for the whole day if there is no
+     * daylight saving time transition during that day.
+     *
+     * @param millis The date as milliseconds since the epoch.
+     * @return The time zone offset in milliseconds.
+     */
+    private int getOffset(long millis) {
+        DayOffset dayOffset = mDayOffset;
+        if (dayOffset != null && millis >= dayOffset.start && millis < dayOffset.end) {
+            return dayOffset.offset;
+        }
+        int offset = mTimeZone.getOffset(millis);
+        long start = floorDiv(millis + offset, DAY_MILLIS) * DAY_MILLIS - offset;
+        long end = start + DAY_MILLIS;
+        if (mTimeZone.getOffset(start) == offset && mTimeZone.getOffset(end - 1) == offset) {
+            mDayOffset = new DayOffset(start, end, offset);
+        }
+        return offset;
+    }
+
+    private static int getDayOfYear(int year, int month, int day) {
+        boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+        return DAYS_BEFORE_MONTH[month - 1] + day + (leap && month > 2 ? 1 : 0);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    /**
+     * Append a non negative number, padded with zeros to the minimum number of digits.
+     *
+     * @param sb        The buffer.
+     * @param value     The number to append.
+     * @param minDigits Minimum number of digits.
+     */
+    private void appendNumber(StringBuilder sb, int value, int minDigits) {
+        int digits = 1;
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            sb.append(mZeroDigit);
+        }
+        while (divisor > 0) {
+            sb.append((char) (mZeroDigit + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * The time zone offset of a day without daylight saving time transitions.
+     */
+    private static class DayOffset {
+        final long start;
+        final long end;
+        final int offset;
+
+        DayOffset(long start, long end, int offset) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Match a file name against all wildcard patterns at once. The patterns are indexed by their first
+ * character, so for a file name only the patterns starting with the same character or with a
+ * wildcard are checked, in the original order. ASCII file names are matched without creating
+ * any object, other file names are matched using the regular expressions.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class FileNamePatternMatcher {
+	private static final int ASCII_SIZE = 128;
+	private static final int KIND_GLOB = 0;
+	private static final int KIND_REGEX = 1;
+	private static final int KIND_NEVER_ASCII = 2;
+
+	private final char[][] mWildcards;
+	private final Pattern[] mPatterns;
+	private final Locale mLocale;
+	private final int[] mKinds;
+	private final int[][] mCandidates;
+	private final boolean mAsciiEnabled;
+
+	/**
+	 * Compile the patterns.
+	 *
+	 * @param wildcards The lower case wildcard patterns, using * and ?.
+	 * @param patterns  The regular expressions equivalent to the wildcard patterns.
+	 * @param locale    The locale used to lower case the file names.
+	 */
+	public FileNamePatternMatcher(String[] wildcards, Pattern[] patterns, Locale locale) {
+		int i, len = wildcards.length;
+		mPatterns = patterns;
+		mLocale = locale;
+		mWildcards = new char[len][];
+		mKinds = new int[len];
+		for (i = 0; i < len; i++) {
+			mWildcards[i] = wildcards[i].toCharArray();
+			mKinds[i] = getKind(mWildcards[i]);
+		}
+		String language = locale.getLanguage();
+		// the Turkish and Azerbaijani lower case of ASCII letter I is not an ASCII character
+		mAsciiEnabled = !"tr".equals(language) && !"az".equals(language);
+		mCandidates = new int[ASCII_SIZE][];
+		int[] buffer = new int[len];
+		int count;
+		for (char c = 0; c < ASCII_SIZE; c++) {
+			count = 0;
+			for (i = 0; i < len; i++) {
+				if (isCandidate(i, c)) {
+					buffer[count++] = i;
+				}
+			}
+			mCandidates[c] = new int[count];
+			System.arraycopy(buffer, 0, mCandidates[c], 0, count);
+		}
+	}
+
+	/**
+	 * Compile the original file name patterns. A star is appended to the patterns which are not
+	 * ending with a star, an empty pattern is matching any file name.
+	 *
+	 * @param beforePatterns The original file name patterns, using * and ?.
+	 * @param locale         The locale used to lower case the patterns and the file names.
+	 * @return The compiled matcher.
+	 */
+	public static FileNamePatternMatcher compile(String[] beforePatterns, Locale locale) {
+		int len = beforePatterns.length;
+		Pattern[] patterns = new Pattern[len];
+		String[] wildcards = new String[len];
+		String before;
+		for (int i = 0; i < len; i++) {
+			before = beforePatterns[i].toLowerCase(locale);
+			if (before.isEmpty()) {
+				before = "*";
+			} else if (before.charAt(before.length() - 1) != '*') {
+				before += "*";
+			}
+			patterns[i] = Pattern.compile(wildcardToRegex(before));
+			wildcards[i] = before;
+		}
+		return new FileNamePatternMatcher(wildcards, patterns, locale);
+	}
+
+	/**
+	 * Convert wildcard to a regex expression.
+	 *
+	 * @param wildcard Wildcard expression to convert.
+	 * @return Converted expression.
+	 */
+	public static String wildcardToRegex(String wildcard) {
+		StringBuffer s = new StringBuffer(wildcard.length());
+		s.append('^');
+		for (int i = 0, is = wildcard.length(); i < is; i++) {
+			char c = wildcard.charAt(i);
+			switch (c) {
+				case '*':
+					s.append(".*");
+					break;
+				case '?':
+					s.append(".");
+					break;
+				// escape special regexp-characters
+				case '(':
+				case ')':
+				case '[':
+				case ']':
+				case '$':
+				case '^':
+				case '.':
+				case '{':
+				case '}':
+				case '|':
+				case '\\':
+					s.append("\\");
+					s.append(c);
+					break;
+				default:
+					s.append(c);
+					break;
+			}
+		}
+		s.append('$');
+		return (s.toString());
+	}
+
+	/**
+	 * Detect how a pattern should be matched against ASCII file names.
+	 *
+	 * @param wildcard The wildcard pattern.
+	 * @return The pattern kind.
+	 */
+	private static int getKind(char[] wildcard) {
+		int kind = KIND_GLOB;
+		for (char c : wildcard) {
+			if (c >= ASCII_SIZE) {
+				// a not ASCII literal character can not match an ASCII file name
+				return KIND_NEVER_ASCII;
+			}
+			if (c == '+') {
+				// the plus sign is not escaped, it is used as a regular expression quantifier
+				kind = KIND_REGEX;
+			}
+		}
+		return kind;
+	}
+
+	/**
+	 * Check if a pattern could match a file name starting with the provided character.
+	 *
+	 * @param index     The pattern index.
+	 * @param firstChar The lower case first character of the file name.
+	 * @return True if the pattern should be checked.
+	 */
+	private boolean isCandidate(int index, char firstChar) {
+		switch (mKinds[index]) {
+			case KIND_NEVER_ASCII:
+				return false;
+			case KIND_REGEX:
+				return true;
+			default:
+				char[] wildcard = mWildcards[index];
+				return wildcard.length == 0 || wildcard[0] == '*' || wildcard[0] == '?'
+						|| wildcard[0] == firstChar;
+		}
+	}
+
+	/**
+	 * Look for the first pattern matching the file name.
+	 *
+	 * @param fileName The file name to be checked.
+	 * @return -1 if the file name is not matching any pattern, otherwise the lowest index of
+	 * the matching patterns.
+	 */
+	public int match(String fileName) {
+		int len = fileName.length();
+		if (!mAsciiEnabled || !isSimpleAscii(fileName, len)) {
+			return matchRegex(fileName);
+		}
+		int[] candidates = mCandidates[len > 0 ? toLowerCase(fileName.charAt(0)) : 0];
+		int index;
+		for (int i = 0; i < candidates.length; i++) {
+			index = candidates[i];
+			if (mKinds[index] == KIND_GLOB) {
+				if (matchGlob(mWildcards[index], fileName, len)) {
+					return index;
+				}
+			} else if (mPatterns[index].matcher(fileName.toLowerCase(mLocale)).matches()) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if the file name contains only ASCII characters and no line terminators, which are
+	 * not matched by the regular expression dot.
+	 *
+	 * @param fileName The file name.
+	 * @param len      The file name length.
+	 * @return True if the file name can be matched without regular expressions.
+	 */
+	private static boolean isSimpleAscii(String fileName, int len) {
+		char c;
+		for (int i = 0; i < len; i++) {
+			c = fileName.charAt(i);
+			if (c >= ASCII_SIZE || c == '\n' || c == '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char toLowerCase(char c) {
+		return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+	}
+
+	/**
+	 * Match an ASCII file name against a wildcard pattern, backtracking to the last star.
+	 *
+	 * @param wildcard The lower case wildcard pattern.
+	 * @param fileName The ASCII file name.
+	 * @param len      The file name length.
+	 * @return True if the whole file name is matching the pattern.
+	 */
+	private static boolean matchGlob(char[] wildcard, String fileName, int len) {
+		int p = 0, n = 0, star = -1, mark = 0, plen = wildcard.length;
+		char pc;
+		while (n < len) {
+			pc = p < plen ? wildcard[p] : 0;
+			if (pc == '*') {
+				star = p++;
+				mark = n;
+			} else if (p < plen && (pc == '?' || pc == toLowerCase(fileName.charAt(n)))) {
+				p++;
+				n++;
+			} else if (star != -1) {
+				p = star + 1;
+				n = ++mark;
+			} else {
+				return false;
+			}
+		}
+		while (p < plen && wildcard[p] == '*') {
+			p++;
+		}
+		return p == plen;
+	}
+
+	/**
+	 * Match the file name using the regular expressions, in the original order.
+	 *
+	 * @param fileName The file name.
+	 * @return -1 or the lowest index of the matching patterns.
+	 */
+	private int matchRegex(String fileName) {
+		String lower = fileName.toLowerCase(mLocale);
+		for (int i = 0; i < mPatterns.length; i++) {
+			if (mPatterns[i].matcher(lower).matches()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.util.Locale;
+
+/**
+ * Build the new file names of a folder, in the rename order. When consecutive files have the same
+ * base name, a counter suffix is added, the first file of the sequence should be renamed again
+ * using the zero suffix.
+ * <p>
+ * This class is not thread safe, each folder should use its own sequence.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class FileNameSequence {
+	private final String mSuffixFormat;
+	private final Locale mLocale;
+	private final boolean mAppendOriginalName;
+	private final StringBuilder mBuilder = new StringBuilder();
+	private String mPreviousBaseName;
+	private int mCount;
+	private String mTitle;
+	private String mTitleZero;
+	private String mNameZero;
+	private String mPreviousName;
+
+	/**
+	 * Create the sequence.
+	 *
+	 * @param suffixFormat       The format of the counter suffix, like _%05d.
+	 * @param locale             The locale used to format the counter.
+	 * @param appendOriginalName True if the original name should be appended.
+	 */
+	public FileNameSequence(String suffixFormat, Locale locale, boolean appendOriginalName) {
+		mSuffixFormat = suffixFormat;
+		mLocale = locale;
+		mAppendOriginalName = appendOriginalName;
+	}
+
+	/**
+	 * Build the new file name, adding the counter suffix if the previous file had the same
+	 * base name.
+	 *
+	 * @param baseName     The base file name, formatted from the file date.
+	 * @param originalName The original file name, without extension.
+	 * @param extension    The file extension, including the dot.
+	 * @return The new file name.
+	 */
+	public String next(String baseName, String originalName, String extension) {
+		StringBuilder sb = mBuilder;
+		sb.setLength(0);
+		sb.append(baseName);
+		if (baseName.equals(mPreviousBaseName)) {
+			mPreviousName = baseName + extension;
+			mCount++;
+		} else {
+			mPreviousBaseName = baseName;
+			mPreviousName = null;
+			mCount = 0;
+		}
+		if (mCount > 0) {
+			sb.append(formatSuffix(0));
+			if (mAppendOriginalName) {
+				sb.append('_').append(originalName);
+			}
+			mTitleZero = sb.toString();
+			sb.append(extension);
+			mNameZero = sb.toString();
+			sb.setLength(baseName.length());
+			sb.append(formatSuffix(mCount));
+		} else {
+			mTitleZero = null;
+			mNameZero = null;
+		}
+		if (mAppendOriginalName) {
+			sb.append('_').append(originalName);
+		}
+		mTitle = sb.toString();
+		sb.append(extension);
+		return sb.toString();
+	}
+
+	/**
+	 * Format the counter suffix.
+	 *
+	 * @param value The counter value.
+	 * @return The formatted suffix.
+	 */
+	public String formatSuffix(int value) {
+		return String.format(mLocale, mSuffixFormat, value);
+	}
+
+	/**
+	 * Obtain the counter of the last built name, zero if it is the first name of a sequence.
+	 *
+	 * @return The counter value.
+	 */
+	public int getCount() {
+		return mCount;
+	}
+
+	/**
+	 * Obtain the title of the last built name, the file name without extension.
+	 *
+	 * @return The file title.
+	 */
+	public String getTitle() {
+		return mTitle;
+	}
+
+	/**
+	 * Obtain the title which should be used for the first file of the sequence.
+	 *
+	 * @return The zero file title, or null if the last name is the first of a sequence.
+	 */
+	public String getTitleZero() {
+		return mTitleZero;
+	}
+
+	/**
+	 * Obtain the name which should be used for the first file of the sequence.
+	 *
+	 * @return The zero file name, or null if the last name is the first of a sequence.
+	 */
+	public String getNameZero() {
+		return mNameZero;
+	}
+
+	/**
+	 * Obtain the name of the first file of the sequence, as it was renamed without suffix.
+	 *
+	 * @return The name without suffix, or null if the last name is the first of a sequence.
+	 */
+	public String getPreviousName() {
+		return mPreviousName;
+	}
+}
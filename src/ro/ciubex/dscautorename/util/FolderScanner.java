@@ -0,0 +1,77 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+
+/**
+ * A folder scanner is used to list the content of a folder, obtaining for each entry the type,
+ * the last modified time and the size.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public interface FolderScanner {
+
+	/**
+	 * Receive the entries of a folder, in the listing order.
+	 */
+	interface Visitor {
+		/**
+		 * Called for each visible sub folder.
+		 *
+		 * @param folder       The sub folder.
+		 * @param lastModified The last modified time of the sub folder.
+		 */
+		void onFolder(File folder, long lastModified);
+
+		/**
+		 * Check if a file should be reported, called for each visible file.
+		 *
+		 * @param fileName The file name.
+		 * @return True if the file details are needed.
+		 */
+		boolean acceptFile(String fileName);
+
+		/**
+		 * Called for each accepted file.
+		 *
+		 * @param file         The file.
+		 * @param lastModified The last modified time of the file.
+		 * @param size         The file size.
+		 */
+		void onFile(File file, long lastModified, long size);
+	}
+
+	/**
+	 * Obtain the last modified time of a folder.
+	 *
+	 * @param folder The folder.
+	 * @return The last modified time or zero if the folder does not exist.
+	 */
+	long getLastModified(File folder);
+
+	/**
+	 * List the content of a folder, the hidden entries are ignored.
+	 *
+	 * @param folder  The folder to list.
+	 * @param visitor The visitor which receives the folder entries.
+	 * @return False if the folder could not be listed.
+	 */
+	boolean listFolder(File folder, Visitor visitor);
+}
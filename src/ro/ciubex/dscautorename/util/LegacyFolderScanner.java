@@ -0,0 +1,57 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+
+/**
+ * A folder scanner using the java.io.File methods, each entry requires several file system calls.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class LegacyFolderScanner implements FolderScanner {
+
+	@Override
+	public long getLastModified(File folder) {
+		return folder.lastModified();
+	}
+
+	@Override
+	public boolean listFolder(File folder, Visitor visitor) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return false;
+		}
+		String fileName;
+		for (File file : files) {
+			if (file.exists() && !file.isHidden()) {
+				if (file.isDirectory()) {
+					visitor.onFolder(file, file.lastModified());
+				}
+				if (file.isFile()) {
+					fileName = file.getName();
+					if (visitor.acceptFile(fileName)) {
+						visitor.onFile(file, file.lastModified(), file.length());
+					}
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A persisted cache of the date and time extracted from the file metadata, so the files are not
+ * parsed again when a rename run is repeated. An entry is valid only while the file has the same
+ * size and last modified time. The least recently used entries are evicted when the cache is full.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class MetadataDateCache {
+	/**
+	 * Returned when there is no valid cached value for a file.
+	 */
+	public static final long NOT_CACHED = Long.MIN_VALUE;
+	private static final int VERSION = 1;
+
+	private final File mCacheFile;
+	private final Map<String, Entry> mEntries;
+	private boolean mModified;
+
+	private static class Entry {
+		final long size;
+		final long lastModified;
+		final long timestamp;
+
+		Entry(long size, long lastModified, long timestamp) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.timestamp = timestamp;
+		}
+	}
+
+	/**
+	 * Create the cache.
+	 *
+	 * @param cacheFile  The file where the cache is saved.
+	 * @param maxEntries The maximum number of cached files.
+	 */
+	public MetadataDateCache(File cacheFile, final int maxEntries) {
+		mCacheFile = cacheFile;
+		mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Load the saved cache, if any.
+	 */
+	public synchronized void load() {
+		mEntries.clear();
+		if (!mCacheFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mCacheFile)));
+			if (in.readInt() != VERSION) {
+				mModified = true;
+				return;
+			}
+			int count = in.readInt();
+			String path;
+			for (int i = 0; i < count; i++) {
+				path = in.readUTF();
+				mEntries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong()));
+			}
+		} catch (IOException e) {
+			mEntries.clear();
+			mModified = true;
+		} finally {
+			Utilities.doClose(in);
+		}
+	}
+
+	/**
+	 * Obtain the cached date and time of a file.
+	 *
+	 * @param path         The file path.
+	 * @param size         The current file size.
+	 * @param lastModified The current last modified time of the file.
+	 * @return The cached value or NOT_CACHED if the file is not cached or was changed.
+	 */
+	public synchronized long get(String path, long size, long lastModified) {
+		Entry entry = mEntries.get(path);
+		if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+			return entry.timestamp;
+		}
+		return NOT_CACHED;
+	}
+
+	/**
+	 * Cache the date and time extracted from a file.
+	 *
+	 * @param path         The file path.
+	 * @param size         The file size.
+	 * @param lastModified The last modified time of the file.
+	 * @param timestamp    The extracted date and time, or -1 if the file does not have it.
+	 */
+	public synchronized void put(String path, long size, long lastModified, long timestamp) {
+		mEntries.put(path, new Entry(size, lastModified, timestamp));
+		mModified = true;
+	}
+
+	/**
+	 * Move the cached value of a renamed file to its new path. The last modified time is
+	 * updated, because the rename could change it.
+	 *
+	 * @param oldPath      The old file path.
+	 * @param newPath      The new file path.
+	 * @param lastModified The last modified time of the renamed file.
+	 */
+	public synchronized void onRenamed(String oldPath, String newPath, long lastModified) {
+		Entry entry = mEntries.remove(oldPath);
+		if (entry != null) {
+			mEntries.put(newPath, new Entry(entry.size, lastModified, entry.timestamp));
+			mModified = true;
+		}
+	}
+
+	/**
+	 * Save the cache if it was changed, from the least to the most recently used entry.
+	 */
+	public synchronized void save() {
+		if (!mModified) {
+			return;
+		}
+		mModified = false;
+		DataOutputStream out = null;
+		try {
+			File parent = mCacheFile.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mCacheFile)));
+			out.writeInt(VERSION);
+			out.writeInt(mEntries.size());
+			for (Map.Entry<String, Entry> item : mEntries.entrySet()) {
+				Entry entry = item.getValue();
+				out.writeUTF(item.getKey());
+				out.writeLong(entry.size);
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.timestamp);
+			}
+		} catch (IOException e) {
+			mCacheFile.delete();
+		} finally {
+			Utilities.doClose(out);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read the creation time of a MP4 or 3GP video from the movie header box, moov/mvhd, without
+ * probing the whole container. Only the box headers are read until the movie header is found.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class Mp4CreationTimeReader {
+	/**
+	 * Seconds between 1904-01-01, the ISO base media file epoch, and 1970-01-01.
+	 */
+	private static final long EPOCH_OFFSET = 2082844800L;
+	private static final int MAX_BOXES = 1024;
+	private static final int TYPE_MOOV = 0x6D6F6F76;
+	private static final int TYPE_MVHD = 0x6D766864;
+
+	/**
+	 * Read the creation time of a video.
+	 *
+	 * @param file The video file.
+	 * @return The creation time in UTC milliseconds, or -1 if the creation time is not set.
+	 * @throws IOException If the file is not an ISO base media file or the movie header was not
+	 *                     found.
+	 */
+	public static long readCreationTime(File file) throws IOException {
+		FileInputStream inputStream = null;
+		try {
+			inputStream = new FileInputStream(file);
+			FileChannel channel = inputStream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(16);
+			long end = channel.size();
+			long[] moov = findBox(channel, buffer, 0, end, TYPE_MOOV);
+			long[] mvhd = findBox(channel, buffer, moov[0], moov[1], TYPE_MVHD);
+			return readMvhdCreationTime(channel, buffer, mvhd[0], mvhd[1]);
+		} finally {
+			Utilities.doClose(inputStream);
+		}
+	}
+
+	/**
+	 * Look for a box between two file positions.
+	 *
+	 * @param channel The file channel.
+	 * @param buffer  A buffer of at least 16 bytes.
+	 * @param start   The position of the first box.
+	 * @param end     The position after the last box.
+	 * @param type    The box type to look for.
+	 * @return The box content start and end positions.
+	 * @throws IOException If the box is not found.
+	 */
+	private static long[] findBox(FileChannel channel, ByteBuffer buffer, long start, long end,
+								  int type) throws IOException {
+		long position = start, size;
+		int header, boxType;
+		for (int i = 0; i < MAX_BOXES && position + 8 <= end; i++) {
+			readFully(channel, buffer, position, 8);
+			size = buffer.getInt(0) & 0xFFFFFFFFL;
+			boxType = buffer.getInt(4);
+			header = 8;
+			if (size == 1) {
+				if (position + 16 > end) {
+					break;
+				}
+				readFully(channel, buffer, position + 8, 8);
+				size = buffer.getLong(0);
+				header = 16;
+			} else if (size == 0) {
+				size = end - position;
+			}
+			if (size < header || size > end - position) {
+				throw new IOException("Invalid box size at " + position);
+			}
+			if (boxType == type) {
+				return new long[]{position + header, position + size};
+			}
+			position += size;
+		}
+		throw new IOException("Box not found: " + typeToString(type));
+	}
+
+	/**
+	 * Read the creation time field of the movie header box.
+	 *
+	 * @param channel The file channel.
+	 * @param buffer  A buffer of at least 16 bytes.
+	 * @param start   The box content start position.
+	 * @param end     The box content end position.
+	 * @return The creation time in UTC milliseconds, or -1 if it is not set.
+	 * @throws IOException If the box could not be read.
+	 */
+	private static long readMvhdCreationTime(FileChannel channel, ByteBuffer buffer, long start,
+											 long end) throws IOException {
+		if (end - start < 8) {
+			throw new IOException("Invalid mvhd box");
+		}
+		readFully(channel, buffer, start, 4);
+		int version = buffer.get(0);
+		long creationTime;
+		if (version == 1) {
+			if (end - start < 12) {
+				throw new IOException("Invalid mvhd box");
+			}
+			readFully(channel, buffer, start + 4, 8);
+			creationTime = buffer.getLong(0);
+		} else if (version == 0) {
+			readFully(channel, buffer, start + 4, 4);
+			creationTime = buffer.getInt(0) & 0xFFFFFFFFL;
+		} else {
+			throw new IOException("Unknown mvhd version: " + version);
+		}
+		if (creationTime == 0) {
+			return -1;
+		}
+		return (creationTime - EPOCH_OFFSET) * 1000;
+	}
+
+	/**
+	 * Read exactly the requested number of bytes, starting from the beginning of the buffer.
+	 *
+	 * @param channel  The file channel.
+	 * @param buffer   The buffer where the bytes are read.
+	 * @param position The file position.
+	 * @param size     The number of bytes to read.
+	 * @throws IOException If the end of file is reached.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int size)
+			throws IOException {
+		buffer.clear();
+		buffer.limit(size);
+		int count;
+		while (buffer.hasRemaining()) {
+			count = channel.read(buffer, position + buffer.position());
+			if (count < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	private static String typeToString(int type) {
+		return new String(new char[]{(char) (type >>> 24), (char) ((type >>> 16) & 0xFF),
+				(char) ((type >>> 8) & 0xFF), (char) (type & 0xFF)});
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A folder scanner using the java.nio.file API, the type, the last modified time and the size of
+ * each entry are obtained with a single file system call.
+ *
+ * @author Claudiu Ciobotariu
+ */
+@TargetApi(Build.VERSION_CODES.O)
+public class NioFolderScanner implements FolderScanner {
+
+	@Override
+	public long getLastModified(File folder) {
+		try {
+			return Files.readAttributes(folder.toPath(), BasicFileAttributes.class)
+					.lastModifiedTime().toMillis();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public boolean listFolder(File folder, Visitor visitor) {
+		DirectoryStream<Path> stream = null;
+		try {
+			stream = Files.newDirectoryStream(folder.toPath());
+			String fileName;
+			BasicFileAttributes attributes;
+			for (Path path : stream) {
+				fileName = path.getFileName().toString();
+				if (fileName.startsWith(".")) {
+					continue;
+				}
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (IOException e) {
+					continue; // the entry was removed meanwhile
+				}
+				if (attributes.isDirectory()) {
+					visitor.onFolder(path.toFile(), attributes.lastModifiedTime().toMillis());
+				} else if (attributes.isRegularFile() && visitor.acceptFile(fileName)) {
+					visitor.onFile(path.toFile(), attributes.lastModifiedTime().toMillis(),
+							attributes.size());
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} catch (DirectoryIteratorException e) {
+			return false;
+		} finally {
+			Utilities.doClose(stream);
+		}
+	}
+}
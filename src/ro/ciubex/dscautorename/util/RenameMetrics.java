@@ -0,0 +1,260 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collect the time spent by the rename runs in each stage, with counters and fixed buckets latency
+ * histograms. The times are measured with the monotonic clock. Recording a value does not lock and
+ * does not create any object, so it can be used from the rename and the metadata threads.
+ * <p>
+ * The metrics are kept in memory, since the application was started or since the last reset.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class RenameMetrics {
+	public static final int STAGE_RUN = 0;
+	public static final int STAGE_SCAN = 1;
+	public static final int STAGE_METADATA = 2;
+	public static final int STAGE_RENAME = 3;
+	public static final int STAGE_MEDIA_STORE_UPDATE = 4;
+	public static final int STAGE_MEDIA_STORE_BATCH = 5;
+	public static final int STAGE_MEDIA_SCANNER = 6;
+	public static final int STAGE_BROADCAST = 7;
+	private static final String[] STAGE_NAMES = {"run", "scan", "metadata", "rename",
+			"mediaStoreUpdate", "mediaStoreBatch", "mediaScanner", "broadcast"};
+
+	public static final int COUNTER_RUNS = 0;
+	public static final int COUNTER_FILES_SCANNED = 1;
+	public static final int COUNTER_FILES_RENAMED = 2;
+	public static final int COUNTER_FILES_FAILED = 3;
+	public static final int COUNTER_METADATA_CACHE_HITS = 4;
+	public static final int COUNTER_MEDIA_STORE_OPERATIONS = 5;
+	private static final String[] COUNTER_NAMES = {"runs", "filesScanned", "filesRenamed",
+			"filesFailed", "metadataCacheHits", "mediaStoreOperations"};
+
+	/**
+	 * The upper bounds of the histogram buckets, in microseconds, the last bucket has no bound.
+	 */
+	private static final long[] BUCKET_BOUNDS = {100, 500, 1000, 5000, 10000, 50000, 100000,
+			500000, 1000000, 5000000, 30000000};
+	private static final int BUCKETS = BUCKET_BOUNDS.length + 1;
+	private static final int STAGES = STAGE_NAMES.length;
+	private static final int COUNTERS = COUNTER_NAMES.length;
+	private static final int STAGE_COUNT = 0;
+	private static final int STAGE_TOTAL = 1;
+	private static final int STAGE_MAX = 2;
+	private static final int STAGE_VALUES = 3;
+
+	private final AtomicLongArray mStages = new AtomicLongArray(STAGES * STAGE_VALUES);
+	private final AtomicLongArray mHistograms = new AtomicLongArray(STAGES * BUCKETS);
+	private final AtomicLongArray mCounters = new AtomicLongArray(COUNTERS);
+	private volatile long mResetTime = System.currentTimeMillis();
+
+	/**
+	 * Obtain the start time of a stage.
+	 *
+	 * @return The current value of the monotonic clock, in nanoseconds.
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the duration of a stage.
+	 *
+	 * @param stage      The stage.
+	 * @param startNanos The stage start time, obtained from {@link #start()}.
+	 */
+	public void record(int stage, long startNanos) {
+		recordNanos(stage, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Record the duration of a stage.
+	 *
+	 * @param stage    The stage.
+	 * @param duration The stage duration, in nanoseconds.
+	 */
+	public void recordNanos(int stage, long duration) {
+		if (duration < 0) {
+			duration = 0;
+		}
+		int index = stage * STAGE_VALUES;
+		mStages.incrementAndGet(index + STAGE_COUNT);
+		mStages.addAndGet(index + STAGE_TOTAL, duration);
+		long max;
+		do {
+			max = mStages.get(index + STAGE_MAX);
+		} while (duration > max && !mStages.compareAndSet(index + STAGE_MAX, max, duration));
+		mHistograms.incrementAndGet(stage * BUCKETS + getBucket(duration / 1000));
+	}
+
+	/**
+	 * Obtain the histogram bucket of a duration.
+	 *
+	 * @param micros The duration in microseconds.
+	 * @return The bucket index.
+	 */
+	private static int getBucket(long micros) {
+		int low = 0, high = BUCKET_BOUNDS.length;
+		int middle;
+		while (low < high) {
+			middle = (low + high) >>> 1;
+			if (micros <= BUCKET_BOUNDS[middle]) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Increment a counter.
+	 *
+	 * @param counter The counter.
+	 */
+	public void increment(int counter) {
+		mCounters.incrementAndGet(counter);
+	}
+
+	/**
+	 * Add a value to a counter.
+	 *
+	 * @param counter The counter.
+	 * @param delta   The value to add.
+	 */
+	public void add(int counter, long delta) {
+		mCounters.addAndGet(counter, delta);
+	}
+
+	public long getCounter(int counter) {
+		return mCounters.get(counter);
+	}
+
+	public long getStageCount(int stage) {
+		return mStages.get(stage * STAGE_VALUES + STAGE_COUNT);
+	}
+
+	public long getStageTotalNanos(int stage) {
+		return mStages.get(stage * STAGE_VALUES + STAGE_TOTAL);
+	}
+
+	/**
+	 * Reset all metrics. The values recorded during the reset could be partially kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < mStages.length(); i++) {
+			mStages.set(i, 0);
+		}
+		for (int i = 0; i < mHistograms.length(); i++) {
+			mHistograms.set(i, 0);
+		}
+		for (int i = 0; i < mCounters.length(); i++) {
+			mCounters.set(i, 0);
+		}
+		mResetTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Estimate a percentile of a stage duration, as the upper bound of the bucket containing it,
+	 * limited by the maximum recorded duration.
+	 *
+	 * @param stage   The stage.
+	 * @param percent The percentile, between 0 and 100.
+	 * @return The estimated percentile in microseconds, or -1 if there is no recorded value.
+	 */
+	public long getPercentileMicros(int stage, int percent) {
+		long total = 0;
+		int offset = stage * BUCKETS;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += mHistograms.get(offset + i);
+		}
+		if (total == 0) {
+			return -1;
+		}
+		long max = mStages.get(stage * STAGE_VALUES + STAGE_MAX) / 1000;
+		long rank = (total * percent + 99) / 100;
+		long count = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			count += mHistograms.get(offset + i);
+			if (count >= rank) {
+				return Math.min(BUCKET_BOUNDS[i], max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Obtain the average rename time of a file, the whole run time divided by the renamed files.
+	 *
+	 * @return The average time in milliseconds, or 0 if no file was renamed.
+	 */
+	public double getAverageMillisPerFile() {
+		long files = getCounter(COUNTER_FILES_RENAMED);
+		return files > 0 ? getStageTotalNanos(STAGE_RUN) / 1000000.0 / files : 0;
+	}
+
+	/**
+	 * Append a text report with all metrics.
+	 *
+	 * @param sb The builder where the report is appended.
+	 */
+	public void appendReport(StringBuilder sb) {
+		sb.append("Rename metrics since ").append(new Date(mResetTime)).append('\n');
+		for (int i = 0; i < COUNTERS; i++) {
+			sb.append(COUNTER_NAMES[i]).append(": ").append(getCounter(i)).append('\n');
+		}
+		sb.append("stage: count, total ms, avg ms, p50 ms, p95 ms, max ms\n");
+		long count, total;
+		for (int stage = 0; stage < STAGES; stage++) {
+			count = getStageCount(stage);
+			if (count == 0) {
+				continue;
+			}
+			total = getStageTotalNanos(stage);
+			sb.append(STAGE_NAMES[stage]).append(": ").append(count)
+					.append(", ").append(formatMillis(total))
+					.append(", ").append(formatMillis(total / count))
+					.append(", ").append(formatPercentile(getPercentileMicros(stage, 50)))
+					.append(", ").append(formatPercentile(getPercentileMicros(stage, 95)))
+					.append(", ").append(formatMillis(mStages.get(stage * STAGE_VALUES + STAGE_MAX)))
+					.append('\n');
+			sb.append("  histogram:");
+			for (int i = 0; i < BUCKETS; i++) {
+				sb.append(' ').append(i < BUCKET_BOUNDS.length ? "<=" + formatPercentile(BUCKET_BOUNDS[i])
+						: ">" + formatPercentile(BUCKET_BOUNDS[i - 1]))
+						.append("ms=").append(mHistograms.get(stage * BUCKETS + i));
+			}
+			sb.append('\n');
+		}
+	}
+
+	private static String formatMillis(long nanos) {
+		return String.format(Locale.US, "%.3f", nanos / 1000000.0);
+	}
+
+	private static String formatPercentile(long micros) {
+		return micros < 0 ? "-" : String.format(Locale.US, "%.1f", micros / 1000.0);
+	}
+}
@@ -32,7 +32,7 @@ import ro.ciubex.dscautorename.model.FileNameModel;
 public class RenamePatternsUtilities {
 	private DSCApplication mApplication;
 	private Locale mLocale;
-	private Pattern[] mPatterns;
+	private FileNamePatternMatcher mMatcher;
 	private FileNameModel[] mFileNameModels;
 
 	public RenamePatternsUtilities(DSCApplication application) {
@@ -45,67 +45,12 @@ public class RenamePatternsUtilities {
 	 * Prepare file name patterns.
 	 */
 	public void buildPatterns() {
-		int i, len = mFileNameModels.length, lst;
-		mPatterns = new Pattern[len];
-		Pattern pattern;
-		FileNameModel fileNameModel;
-		String before;
-		for (i = 0; i < len; i++) {
-			fileNameModel = mFileNameModels[i];
-			before = fileNameModel.getBefore().toLowerCase(mLocale);
-			lst = before.length();
-			if (lst == 0) {
-				before = "*";
-			} else if (lst > 0) {
-				if (before.charAt(lst - 1) != '*') {
-					before += "*";
-				}
-			}
-			pattern = Pattern.compile(wildcardToRegex(before));
-			mPatterns[i] = pattern;
+		int len = mFileNameModels.length;
+		String[] befores = new String[len];
+		for (int i = 0; i < len; i++) {
+			befores[i] = mFileNameModels[i].getBefore();
 		}
-	}
-
-	/**
-	 * Convert wildcard to a regex expression.
-	 *
-	 * @param wildcard Wildcard expression to convert.
-	 * @return Converted expression.
-	 */
-	private String wildcardToRegex(String wildcard) {
-		StringBuffer s = new StringBuffer(wildcard.length());
-		s.append('^');
-		for (int i = 0, is = wildcard.length(); i < is; i++) {
-			char c = wildcard.charAt(i);
-			switch (c) {
-				case '*':
-					s.append(".*");
-					break;
-				case '?':
-					s.append(".");
-					break;
-				// escape special regexp-characters
-				case '(':
-				case ')':
-				case '[':
-				case ']':
-				case '$':
-				case '^':
-				case '.':
-				case '{':
-				case '}':
-				case '|':
-				case '\\':
-					s.append("\\");
-					s.append(c);
-					break;
-				default:
-					s.append(c);
-					break;
-			}
-		}
-		s.append('$');
-		return (s.toString());
+		mMatcher = FileNamePatternMatcher.compile(befores, mLocale);
 	}
 
 	/**
@@ -116,16 +61,7 @@ public class RenamePatternsUtilities {
 	 * returned file name pattern index.
 	 */
 	public int matchFileNameBefore(String fileName) {
-		String lower = fileName.toLowerCase(mLocale);
-		int i, len = mPatterns.length;
-		Pattern pattern;
-		for (i = 0; i < len; i++) {
-			pattern = mPatterns[i];
-			if (pattern.matcher(lower).matches()) {
-				return i;
-			}
-		}
-		return -1;
+		return mMatcher.match(fileName);
 	}
 
 	/**
@@ -139,7 +75,7 @@ public class RenamePatternsUtilities {
 	public int matchFileNameBefore(String patternString, String fileName) {
 		String before = patternString.toLowerCase(mLocale);
 		String lower = fileName.toLowerCase(mLocale);
-		Pattern pattern = Pattern.compile(wildcardToRegex(before));
+		Pattern pattern = Pattern.compile(FileNamePatternMatcher.wildcardToRegex(before));
 		if (pattern.matcher(lower).matches()) {
 			return 0;
 		}
@@ -0,0 +1,258 @@
+/**
+ * This file is part of DSCAutoRename application.
+ *
+ * Copyright (C) 2018 Claudiu Ciobotariu
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ro.ciubex.dscautorename.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append text lines or binary records to a set of rolling log segments. The current segment is
+ * the base file name, when it is full it becomes the segment 1 and the older segments are shifted,
+ * the oldest segment is deleted. The data is copied in a direct buffer which is written to the file only when it
+ * is full or when it is flushed, so the writes are not done for each line.
+ * <p>
+ * This class is not thread safe, it should be used only by the log writer thread.
+ *
+ * @author Claudiu Ciobotariu
+ */
+public class RollingLogWriter {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final char LINE_SEPARATOR = '\n';
+
+	private final File mFolder;
+	private final String mName;
+	private final String mExtension;
+	private final long mSegmentSize;
+	private final int mSegmentCount;
+	private ByteBuffer mBuffer;
+	private final CharsetEncoder mEncoder;
+	private FileOutputStream mOutputStream;
+	private FileChannel mChannel;
+	private long mSegmentLength;
+	private int mRollCount;
+
+	/**
+	 * Create the writer.
+	 *
+	 * @param folder       The folder of the log segments.
+	 * @param fileName     The file name of the current segment, like name.log.
+	 * @param segmentSize  The maximum size in bytes of a segment.
+	 * @param segmentCount Number of segments to keep, including the current segment.
+	 */
+	public RollingLogWriter(File folder, String fileName, long segmentSize, int segmentCount) {
+		mFolder = folder;
+		int idx = fileName.lastIndexOf('.');
+		mName = idx > 0 ? fileName.substring(0, idx) : fileName;
+		mExtension = idx > 0 ? fileName.substring(idx) : "";
+		mSegmentSize = Math.max(BUFFER_SIZE, segmentSize);
+		mSegmentCount = Math.max(1, segmentCount);
+		mEncoder = Charset.forName("UTF-8").newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Obtain a segment file.
+	 *
+	 * @param index The segment index, 0 is the current segment.
+	 * @return The segment file.
+	 */
+	public File getSegment(int index) {
+		if (index == 0) {
+			return new File(mFolder, mName + mExtension);
+		}
+		return new File(mFolder, mName + "." + index + mExtension);
+	}
+
+	/**
+	 * Obtain the existing segment files, from the oldest to the current segment.
+	 *
+	 * @return The list of segment files.
+	 */
+	public List<File> getSegments() {
+		List<File> segments = new ArrayList<>();
+		File file;
+		for (int i = mSegmentCount - 1; i >= 0; i--) {
+			file = getSegment(i);
+			if (file.exists()) {
+				segments.add(file);
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Append a line to the log.
+	 *
+	 * @param line The line text, without the line separator.
+	 * @throws IOException If the line could not be written.
+	 */
+	public void appendLine(CharSequence line) throws IOException {
+		openChannel();
+		CharBuffer chars = CharBuffer.wrap(line);
+		mEncoder.reset();
+		CoderResult result;
+		do {
+			result = mEncoder.encode(chars, mBuffer, true);
+			if (result.isOverflow()) {
+				writeBuffer();
+			}
+		} while (result.isOverflow());
+		if (!mBuffer.hasRemaining()) {
+			writeBuffer();
+		}
+		mBuffer.put((byte) LINE_SEPARATOR);
+		if (mSegmentLength + mBuffer.position() >= mSegmentSize) {
+			rollSegments();
+		}
+	}
+
+	/**
+	 * Append a binary record to the log, a record is never split between two segments.
+	 *
+	 * @param data   The record bytes.
+	 * @param offset The record offset in the data array.
+	 * @param length The record length.
+	 * @throws IOException If the record could not be written.
+	 */
+	public void append(byte[] data, int offset, int length) throws IOException {
+		openChannel();
+		int count;
+		while (length > 0) {
+			if (!mBuffer.hasRemaining()) {
+				writeBuffer();
+			}
+			count = Math.min(length, mBuffer.remaining());
+			mBuffer.put(data, offset, count);
+			offset += count;
+			length -= count;
+		}
+		if (mSegmentLength + mBuffer.position() >= mSegmentSize) {
+			rollSegments();
+		}
+	}
+
+	/**
+	 * Obtain the number of segments closed by this writer, used by the binary encoders to
+	 * detect when a new segment is started.
+	 *
+	 * @return The number of closed segments.
+	 */
+	public int getRollCount() {
+		return mRollCount;
+	}
+
+	/**
+	 * Write the buffered lines to the current segment.
+	 *
+	 * @throws IOException If the lines could not be written.
+	 */
+	public void flush() throws IOException {
+		if (mBuffer != null && mBuffer.position() > 0) {
+			openChannel();
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Flush the buffered lines and close the current segment.
+	 */
+	public void close() {
+		try {
+			flush();
+		} catch (IOException e) {
+			// the log can not be written
+		}
+		closeChannel();
+	}
+
+	/**
+	 * Open the current segment for append, if it is not already opened.
+	 *
+	 * @throws IOException If the segment could not be opened.
+	 */
+	private void openChannel() throws IOException {
+		if (mChannel == null) {
+			if (!mFolder.exists()) {
+				mFolder.mkdirs();
+			}
+			if (mBuffer == null) {
+				mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			}
+			mOutputStream = new FileOutputStream(getSegment(0), true);
+			mChannel = mOutputStream.getChannel();
+			mSegmentLength = mChannel.size();
+		}
+	}
+
+	private void closeChannel() {
+		Utilities.doClose(mOutputStream);
+		mOutputStream = null;
+		mChannel = null;
+	}
+
+	/**
+	 * Write the buffer content to the current segment.
+	 *
+	 * @throws IOException If the buffer could not be written.
+	 */
+	private void writeBuffer() throws IOException {
+		mBuffer.flip();
+		while (mBuffer.hasRemaining()) {
+			mSegmentLength += mChannel.write(mBuffer);
+		}
+		mBuffer.clear();
+	}
+
+	/**
+	 * Close the full current segment and shift the older segments.
+	 *
+	 * @throws IOException If the buffered lines could not be written.
+	 */
+	private void rollSegments() throws IOException {
+		writeBuffer();
+		closeChannel();
+		File oldest = getSegment(mSegmentCount - 1);
+		if (oldest.exists()) {
+			oldest.delete();
+		}
+		File segment;
+		for (int i = mSegmentCount - 2; i >= 0; i--) {
+			segment = getSegment(i);
+			if (segment.exists()) {
+				segment.renameTo(getSegment(i + 1));
+			}
+		}
+		if (mSegmentCount == 1) {
+			getSegment(0).delete();
+		}
+		mSegmentLength = 0;
+		mRollCount++;
+	}
+}
@@ -38,12 +38,9 @@ import java.io.IOException;
 import java.io.LineNumberReader;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.TimeZone;
 
 import ro.ciubex.dscautorename.model.MountVolume;
 import ro.ciubex.dscautorename.model.SelectedFolderModel;
@@ -569,24 +566,7 @@ public class Utilities {
      * @return The parsed date time.
      */
     public static Date parseExifDateTimeString(String dateTime) {
-        String[] arr = dateTime.split(" ");
-        Date date = null;
-        if (arr.length == 2) {
-            String[] dateString = arr[0].split(":");
-            String[] timeString = arr[1].split(":");
-            if (dateString.length == 3 && timeString.length == 3) {
-                Calendar calendar = GregorianCalendar.getInstance();
-                calendar.set(Calendar.YEAR, parseToInt(dateString[0]));
-                calendar.set(Calendar.MONTH, parseToInt(dateString[1]) - 1);
-                calendar.set(Calendar.DAY_OF_MONTH, parseToInt(dateString[2]));
-                calendar.set(Calendar.HOUR_OF_DAY, parseToInt(timeString[0]));
-                calendar.set(Calendar.MINUTE, parseToInt(timeString[1]));
-                calendar.set(Calendar.SECOND, parseToInt(timeString[2]));
-                calendar.set(Calendar.MILLISECOND, 0);
-                date = calendar.getTime();
-            }
-        }
-        return date;
+        return DateTimeParser.parseExifDateTimeString(dateTime);
     }
 
     /**
@@ -596,33 +576,18 @@ public class Utilities {
      * @return The parsed date time.
      */
     public static Date parseMetadataDateTimeString(String dateTime) {
-        String[] arr = dateTime != null ? dateTime.split("\\.") : null;
-        Date date = null;
-        if (arr != null && arr.length > 1) {
-            String dateTimeString = arr[0];
-            int k = 0, year;
-            if (dateTimeString.length() == 15) {
-                Calendar calendar = GregorianCalendar.getInstance(TimeZone.getTimeZone("GMT"));
-                k = 0;
-                year = parseToInt(dateTimeString.substring(k, k + 4));
-                if (calendar.get(Calendar.YEAR) - year < 5) { // avoid possible wrong year
-                    calendar.set(Calendar.YEAR, year);
-                }
-                k += 4;
-                calendar.set(Calendar.MONTH, parseToInt(dateTimeString.substring(k, k + 2)) - 1);
-                k += 2;
-                calendar.set(Calendar.DAY_OF_MONTH, parseToInt(dateTimeString.substring(k, k + 2)));
-                k += 3; // skip T
-                calendar.set(Calendar.HOUR_OF_DAY, parseToInt(dateTimeString.substring(k, k + 2)));
-                k += 2;
-                calendar.set(Calendar.MINUTE, parseToInt(dateTimeString.substring(k, k + 2)));
-                k += 2;
-                calendar.set(Calendar.SECOND, parseToInt(dateTimeString.substring(k, k + 2)));
-                calendar.set(Calendar.MILLISECOND, 0);
-                date = calendar.getTime();
-            }
-        }
-        return date;
+        return DateTimeParser.parseMetadataDateTimeString(dateTime);
+    }
+
+    /**
+     * Convert a UTC time read from the media metadata to a date, checking the year in the same
+     * way as parseMetadataDateTimeString.
+     *
+     * @param utcTime The UTC time in milliseconds.
+     * @return The checked date time.
+     */
+    public static Date getMetadataDate(long utcTime) {
+        return DateTimeParser.getMetadataDate(utcTime);
     }
 
     /**